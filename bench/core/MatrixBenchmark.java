@@ -0,0 +1,62 @@
+package core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Matrix multiplication and vector transform, allocating and in-place
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class MatrixBenchmark {
+    private final Vector yAxis = new Vector(0, 0.96, 0.28);
+    private final Vector zAxis = new Vector(-0.2, 0.98, 0);
+    private final Matrix a = Matrix.createAxisTranslation(yAxis, zAxis);
+    private final Matrix b = Matrix.createAxisTranslation(new Vector(0.1, 0.99, 0), new Vector(0, -0.3, 0.95));
+    private final Matrix destMatrix = Matrix.createIdentity();
+    private final Vector vec = new Vector(1.5, -29.4, 3.125);
+    private final Vector destVector = new Vector();
+
+    @Benchmark
+    public Matrix mul() {
+        return a.mul(b);
+    }
+
+    @Benchmark
+    public Matrix mulInto() {
+        return a.mulInto(b, destMatrix);
+    }
+
+    @Benchmark
+    public Vector mulVector() {
+        return a.mul(vec);
+    }
+
+    @Benchmark
+    public Vector transformInto() {
+        return a.transformInto(vec, destVector);
+    }
+
+    @Benchmark
+    public Matrix createAxisTranslation() {
+        return Matrix.createAxisTranslation(yAxis, zAxis);
+    }
+
+    @Benchmark
+    public Matrix setAxisTranslation() {
+        return destMatrix.setAxisTranslation(yAxis, zAxis);
+    }
+}
@@ -0,0 +1,157 @@
+package core;
+
+import java.awt.geom.Point2D;
+import java.util.concurrent.TimeUnit;
+
+import net.java.joglutils.model.geometry.Face;
+import net.java.joglutils.model.geometry.Mesh;
+import net.java.joglutils.model.geometry.Model;
+import net.java.joglutils.model.geometry.Vec4;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A frame of the software renderer: a row of spheres over a floor, on one
+ * thread or on all cores. Needs no GPU or model files
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SoftwareRendererBenchmark {
+    @Param({ "8", "64" })
+    public int numOfObjects;
+
+    @Param({ "false", "true" })
+    public boolean isParallel;
+
+    private SoftwareRenderer renderer;
+
+    @Setup
+    public void setup() {
+        final Model sphere = createSphere(24, 16);
+        final Model floor = createSphere(4, 2);
+
+        renderer = new SoftwareRenderer(800, 600);
+        renderer.setParallel(isParallel);
+
+        final Camera camera = new Camera();
+        camera.setPosition(new Vector(0, 25, 40));
+        camera.setCenter(new Vector(0, 0, 0));
+        renderer.setCamera(camera);
+
+        final GameObject[] objects = new GameObject[numOfObjects + 1];
+        objects[0] = new Thing(floor, new Vector(0, -1, 0), new Vector(20, 0.2, 20));
+        for (int i = 1; i <= numOfObjects; i++) {
+            final double angle = 2 * Math.PI * i / numOfObjects;
+            objects[i] = new Thing(sphere, new Vector(8 * Math.cos(angle), 1, 8 * Math.sin(angle)),
+                    new Vector(1, 1, 1));
+        }
+
+        renderer.setDrawCallback(new DrawCallback() {
+            public void drawObjects() {
+                for (GameObject object : objects) {
+                    renderer.renderGameObject(object);
+                }
+            }
+
+            public void drawText() {
+                renderer.renderText("Benchmark", 10, 10);
+            }
+        });
+    }
+
+    @Benchmark
+    public int[] renderFrame() {
+        renderer.renderFrame();
+        return renderer.getPixels();
+    }
+
+    /** A UV sphere of quads */
+    private static Model createSphere(int slices, int stacks) {
+        final Mesh mesh = new Mesh();
+        mesh.materialID = -1;
+        mesh.numOfVerts = (slices + 1) * (stacks + 1);
+        mesh.vertices = new Vec4[mesh.numOfVerts];
+        for (int stack = 0; stack <= stacks; stack++) {
+            final double phi = Math.PI * stack / stacks;
+            for (int slice = 0; slice <= slices; slice++) {
+                final double theta = 2 * Math.PI * slice / slices;
+                mesh.vertices[stack * (slices + 1) + slice] = new Vec4((float) (Math.sin(phi) * Math.cos(theta)),
+                        (float) Math.cos(phi), (float) (Math.sin(phi) * Math.sin(theta)), 1);
+            }
+        }
+
+        mesh.numOfFaces = slices * stacks;
+        mesh.faces = new Face[mesh.numOfFaces];
+        for (int stack = 0; stack < stacks; stack++) {
+            for (int slice = 0; slice < slices; slice++) {
+                final int corner = stack * (slices + 1) + slice;
+                final Face face = new Face(4);
+                face.vertIndex = new int[] { corner, corner + 1, corner + slices + 2, corner + slices + 1 };
+                mesh.faces[stack * slices + slice] = face;
+            }
+        }
+
+        final Model model = new Model("sphere");
+        model.addMesh(mesh);
+        return model;
+    }
+
+    private static class Thing implements GameObject {
+        private final Model model;
+        private final Vector position;
+        private final Vector scaling;
+        private final Vector orientation = new Vector();
+
+        Thing(Model model, Vector position, Vector scaling) {
+            this.model = model;
+            this.position = position;
+            this.scaling = scaling;
+        }
+
+        public Model getModel() {
+            return model;
+        }
+
+        public Vector getPosition() {
+            return position;
+        }
+
+        public Vector getRenderPosition() {
+            return position;
+        }
+
+        public Vector getOrientation() {
+            return orientation;
+        }
+
+        public Vector getScaling() {
+            return scaling;
+        }
+
+        public double overlappingDistance(GameObject other) {
+            return 0;
+        }
+
+        public double getRadius() {
+            return 1;
+        }
+
+        public Point2D.Double getCenter() {
+            return new Point2D.Double(position.x(), position.z());
+        }
+    }
+}
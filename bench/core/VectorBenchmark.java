@@ -0,0 +1,73 @@
+package core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Allocating Vector operations against their in-place variants
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class VectorBenchmark {
+    private final Vector a = new Vector(1.5, -2.25, 3.125);
+    private final Vector b = new Vector(-0.5, 4.75, 2.0);
+    private final Vector dest = new Vector();
+
+    @Benchmark
+    public Vector add() {
+        return a.add(b);
+    }
+
+    @Benchmark
+    public Vector addInto() {
+        return a.addInto(b, dest);
+    }
+
+    @Benchmark
+    public Vector mul() {
+        return a.mul(0.75);
+    }
+
+    @Benchmark
+    public Vector mulInto() {
+        return a.mulInto(0.75, dest);
+    }
+
+    @Benchmark
+    public Vector normalize() {
+        return a.normalize();
+    }
+
+    @Benchmark
+    public Vector normalizeInto() {
+        return a.normalizeInto(dest);
+    }
+
+    @Benchmark
+    public Vector cross() {
+        return a.cross(b);
+    }
+
+    @Benchmark
+    public Vector crossInto() {
+        return a.crossInto(b, dest);
+    }
+
+    @Benchmark
+    public double dot() {
+        return a.dot(b);
+    }
+}
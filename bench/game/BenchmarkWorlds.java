@@ -0,0 +1,45 @@
+package game;
+
+import java.util.Random;
+
+import core.NullRenderer;
+import core.Vector;
+
+/**
+ * Builds worlds with many bodies for the benchmarks, without models or GL
+ */
+final class BenchmarkWorlds {
+    // Grid spacing, larger than any pair of radii so bodies never overlap
+    private static final double SPACING = 2;
+
+    private BenchmarkWorlds() {
+    }
+
+    /**
+     * Create a world with n players and n pillars on interleaved grids, so the
+     * collision loops do all their pair tests but never resolve a contact.
+     * Players get random velocities so friction is computed.
+     */
+    static World create(int n, long seed) {
+        final Random random = new Random(seed);
+        final World world = new World(new NullRenderer(), SoundEngine.SILENT);
+        world.addSurface(null);
+        world.tiltSurface(4, -3);
+
+        final int side = (int) Math.ceil(Math.sqrt(n));
+        for (int i = 0; i < n; i++) {
+            final double x = (i % side) * SPACING;
+            final double z = (i / side) * SPACING;
+
+            final PlayerController player = world.addPlayer(null, i + 1);
+            player.getPlayer().setPosition(new Vector(x, 0, z));
+            player.getPlayer().setVelocity(new Vector(random.nextDouble() - 0.5, 0, random.nextDouble() - 0.5));
+
+            world.addPillar(null, new Vector(x + SPACING / 2, 0, z + SPACING / 2));
+        }
+
+        world.addCrown(null);
+        world.setSeed(seed); // the same surface tilts and pushes in every run
+        return world;
+    }
+}
@@ -0,0 +1,64 @@
+package game;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Integration of all bodies in a BodyStore, Verlet against Euler
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PhysicsBenchmark {
+    private static final double DT = 0.015;
+
+    @Param({ "4", "64", "1000", "10000" })
+    public int bodies;
+
+    private final PhysicsEngine physicsEngine = new PhysicsEngine();
+    private BodyStore store;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+        store = new BodyStore();
+        for (int i = 0; i < bodies; i++) {
+            final int id = store.add(3, 0.7);
+            store.setPosition(id, random.nextDouble(), 0, random.nextDouble());
+            store.setVelocity(id, random.nextDouble(), 0, random.nextDouble());
+        }
+    }
+
+    @Benchmark
+    public BodyStore update() {
+        physicsEngine.update(store, DT);
+        return store;
+    }
+
+    @Benchmark
+    public BodyStore integrateVerlet() {
+        PhysicsEngine.integrateVerlet(store, 0, store.size(), DT);
+        return store;
+    }
+
+    @Benchmark
+    public BodyStore integrateEuler() {
+        PhysicsEngine.integrateEuler(store, 0, store.size(), DT);
+        return store;
+    }
+}
@@ -0,0 +1,60 @@
+package game;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-step World work over all players: surface forces and the player and
+ * pillar collision passes, serial and parallel. Bodies never overlap, so the collision benchmarks
+ * measure the broad phase (including the grid rebuild) and the pair tests only.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class WorldBenchmark {
+    @Param({ "4", "64", "1000", "10000" })
+    public int bodies;
+
+    @Param({ "false", "true" })
+    public boolean parallel;
+
+    private World world;
+
+    @Setup
+    public void setup() {
+        world = BenchmarkWorlds.create(bodies, 42);
+        world.setParallel(parallel);
+    }
+
+    @Benchmark
+    public double computeSurfaceForces() {
+        world.updateSurface(0);
+        return world.computeAllSurfaceForces();
+    }
+
+    @Benchmark
+    public void collideWithPlayers() {
+        world.buildBroadPhase();
+        world.collideWithPlayers();
+    }
+
+    @Benchmark
+    public void collideWithPillars() {
+        world.buildBroadPhase();
+        world.collideWithPillars();
+    }
+}
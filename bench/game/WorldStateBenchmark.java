@@ -0,0 +1,49 @@
+package game;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Saving and restoring the complete World state, as every AI rollout does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class WorldStateBenchmark {
+    @Param({ "4", "64", "1000" })
+    public int bodies;
+
+    private final WorldState state = new WorldState();
+    private World world;
+
+    @Setup
+    public void setup() {
+        world = BenchmarkWorlds.create(bodies, 42);
+        world.save(state);
+    }
+
+    @Benchmark
+    public WorldState save() {
+        world.save(state);
+        return state;
+    }
+
+    @Benchmark
+    public void restore() {
+        world.restore(state);
+    }
+}
@@ -4,13 +4,21 @@ import game.*;
 import test.*;
 
 import java.awt.Frame;
+import java.awt.Graphics;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
 import javax.media.opengl.GLCanvas;
 
-import com.sun.opengl.util.Animator;
+import util.Profiler;
 
 public class Main {
+    // The phase latencies are written here on exit
+    private static final String PROFILE_PATH = "profile.txt";
+    private static final double FRAMES_PER_SECOND = 60;
+    // While the window is unfocused or iconified
+    private static final double IDLE_FRAMES_PER_SECOND = 5;
 
     public static void main(String[] args) {
 
@@ -22,12 +30,18 @@ public class Main {
 
     private static void run() throws Exception {
         Frame frame = new Frame();
-        GLCanvas canvas = new GLCanvas();
+        final GLAdapter renderer = new GLAdapter();
+        GLCanvas canvas = new GLCanvas() {
+            // Repaints after the window was damaged (e.g. uncovered) draw the
+            // frame again, the renderer would skip an unrequested display()
+            public void paint(Graphics g) {
+                renderer.requestFrame();
+                super.paint(g);
+            }
+        };
 
-        SoundEffect.init();
         SoundEffect.volume = SoundEffect.Volume.LOW; // un-mute
 
-        final GLAdapter renderer = new GLAdapter();
         final Camera camera = new Camera();
         final GameRunner gameRunner = new GameRunner(renderer, canvas, camera);
 
@@ -44,22 +58,51 @@ public class Main {
 
         frame.add(canvas);
         frame.setSize(800, 800);
-        final Animator animator = new Animator(canvas);
+        final FrameScheduler scheduler = new FrameScheduler(canvas, FRAMES_PER_SECOND, IDLE_FRAMES_PER_SECOND);
+        scheduler.setContinuous(false); // frames are requested by the renderer
+        renderer.setFrameScheduler(scheduler);
         frame.addWindowListener(new WindowAdapter() {
+            public void windowActivated(WindowEvent e) {
+                scheduler.setThrottled(false);
+            }
+
+            public void windowDeactivated(WindowEvent e) {
+                scheduler.setThrottled(true);
+            }
+
+            public void windowIconified(WindowEvent e) {
+                scheduler.setThrottled(true);
+            }
+
+            public void windowDeiconified(WindowEvent e) {
+                scheduler.setThrottled(false);
+                renderer.requestFrame(); // the window's content was lost
+            }
+
             public void windowClosing(WindowEvent e) {
                 new Thread(new Runnable() {
                     public void run() {
-                        animator.stop();
+                        try {
+                            scheduler.stop();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        try {
+                            Profiler.DEFAULT.writeReport(new File(PROFILE_PATH));
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
                         System.exit(0);
                     }
                 }).start();
             }
         });
         frame.setVisible(true);
-        animator.start();
+        scheduler.start();
         canvas.requestFocus();
 
-        gameRunner.restart();
+        gameRunner.loadAssets();
+        gameRunner.start();
     }
 
 }
@@ -0,0 +1,168 @@
+package core;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.media.opengl.GLAutoDrawable;
+
+/**
+ * Drives a GLAutoDrawable at a target frame rate, instead of as fast as
+ * possible like Animator.
+ * <br />
+ * Frames are paced on their own thread: it parks until shortly before the next
+ * frame is due and yields for the rest, which is precise without keeping a core
+ * busy. When throttled (e.g. the window is unfocused or iconified) frames are
+ * drawn at the lower idle rate.
+ * <br />
+ * When not continuous, a frame is drawn only after requestFrame(), and the
+ * thread sleeps meanwhile. Requests made faster than the frame rate are
+ * coalesced.
+ */
+public class FrameScheduler {
+    // Park until this long before a frame is due, then yield
+    private static final long SPIN_NANOS = 1000000;
+
+    private final GLAutoDrawable drawable;
+    private volatile long periodNanos;
+    private volatile long idlePeriodNanos;
+    private volatile boolean isThrottled;
+    private volatile boolean isContinuous = true;
+    private final AtomicBoolean isFrameRequested = new AtomicBoolean(true);
+    private volatile boolean isRunning;
+    private volatile Thread thread; // read by wake() on any thread
+    private volatile long frames;
+
+    /**
+     * @param framesPerSecond target rate
+     * @param idleFramesPerSecond rate when throttled
+     */
+    public FrameScheduler(GLAutoDrawable drawable, double framesPerSecond, double idleFramesPerSecond) {
+        this.drawable = drawable;
+        setTargetRate(framesPerSecond);
+        setIdleRate(idleFramesPerSecond);
+    }
+
+    public void setTargetRate(double framesPerSecond) {
+        periodNanos = (long) (1e9 / framesPerSecond);
+        wake();
+    }
+
+    public void setIdleRate(double framesPerSecond) {
+        idlePeriodNanos = (long) (1e9 / framesPerSecond);
+        wake();
+    }
+
+    /** Draw at the idle rate, e.g. while the window is unfocused */
+    public void setThrottled(boolean isThrottled) {
+        this.isThrottled = isThrottled;
+        wake();
+    }
+
+    /**
+     * Draw every frame (the default), or only requested frames
+     */
+    public void setContinuous(boolean isContinuous) {
+        this.isContinuous = isContinuous;
+        wake();
+    }
+
+    /**
+     * Draw a frame as soon as the frame rate allows, when not continuous. May be
+     * called from any thread
+     */
+    public void requestFrame() {
+        if (!isFrameRequested.getAndSet(true)) {
+            wake();
+        }
+    }
+
+    /** Number of frames drawn */
+    public long getFrameCount() {
+        return frames;
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+
+        isRunning = true;
+        thread = new Thread(new Runnable() {
+            public void run() {
+                loop();
+            }
+        }, "frame-scheduler");
+        thread.start();
+    }
+
+    /** Stop drawing, and wait for the current frame to finish */
+    public void stop() throws InterruptedException {
+        final Thread stopped;
+        synchronized (this) {
+            stopped = thread;
+            thread = null;
+            isRunning = false;
+        }
+
+        if (stopped != null) {
+            LockSupport.unpark(stopped);
+            stopped.join();
+        }
+    }
+
+    private void wake() {
+        final Thread current = thread;
+        if (current != null) {
+            LockSupport.unpark(current);
+        }
+    }
+
+    private void loop() {
+        long lastFrame = System.nanoTime() - periodNanos;
+        while (isRunning) {
+            waitForFrame(lastFrame);
+            if (!isRunning) {
+                break;
+            }
+
+            if (!isContinuous && !isFrameRequested.getAndSet(false)) {
+                LockSupport.park(this); // until requested
+                continue;
+            }
+
+            final long now = System.nanoTime();
+            final long period = getPeriod();
+            // On time, keep the rhythm. After a stall, start from now instead
+            // of drawing the missed frames in a burst
+            lastFrame = now - lastFrame > 2 * period ? now : lastFrame + period;
+
+            try {
+                drawable.display();
+            } catch (RuntimeException e) {
+                e.printStackTrace(); // keep drawing
+            }
+            frames++;
+        }
+    }
+
+    /** Return when the frame after lastFrame is due, or when stopped */
+    private void waitForFrame(long lastFrame) {
+        while (isRunning) {
+            // The period is read again after every wake-up, it may have changed
+            final long remaining = lastFrame + getPeriod() - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(this, remaining - SPIN_NANOS);
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    private long getPeriod() {
+        return isThrottled ? idlePeriodNanos : periodNanos;
+    }
+}
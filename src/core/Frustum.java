@@ -0,0 +1,98 @@
+package core;
+
+/**
+ * The view frustum of a perspective camera, for culling bounding spheres
+ * that are off screen. Set from the same values as gluLookAt and
+ * gluPerspective.
+ */
+public class Frustum {
+    // Camera position and orthonormal view axes (direction looks into the screen)
+    private double px, py, pz;
+    private double dx, dy, dz;
+    private double rx, ry, rz;
+    private double ux, uy, uz;
+
+    private double near;
+    private double far;
+    private double tanHalfFovY;
+    private double cosHalfFovY, sinHalfFovY;
+    private double cosHalfFovX, sinHalfFovX;
+
+    /**
+     * @param position  the eye, as in gluLookAt
+     * @param center    the point looked at, as in gluLookAt
+     * @param up        the up direction, as in gluLookAt
+     * @param fovY      vertical field of view in degrees, as in gluPerspective
+     * @param aspect    width / height
+     * @param near, far clipping distances
+     */
+    public void update(Vector position, Vector center, Vector up, double fovY, double aspect, double near,
+            double far) {
+        px = position.x();
+        py = position.y();
+        pz = position.z();
+
+        dx = center.x() - px;
+        dy = center.y() - py;
+        dz = center.z() - pz;
+        double length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        dx /= length;
+        dy /= length;
+        dz /= length;
+
+        // right = direction x up, then a true up = right x direction
+        rx = dy * up.z() - dz * up.y();
+        ry = dz * up.x() - dx * up.z();
+        rz = dx * up.y() - dy * up.x();
+        length = Math.sqrt(rx * rx + ry * ry + rz * rz);
+        rx /= length;
+        ry /= length;
+        rz /= length;
+
+        ux = ry * dz - rz * dy;
+        uy = rz * dx - rx * dz;
+        uz = rx * dy - ry * dx;
+
+        this.near = near;
+        this.far = far;
+
+        final double halfFovY = Math.toRadians(fovY) / 2;
+        final double halfFovX = Math.atan(aspect * Math.tan(halfFovY));
+        tanHalfFovY = Math.tan(halfFovY);
+        cosHalfFovY = Math.cos(halfFovY);
+        sinHalfFovY = Math.sin(halfFovY);
+        cosHalfFovX = Math.cos(halfFovX);
+        sinHalfFovX = Math.sin(halfFovX);
+    }
+
+    /**
+     * @return false if the sphere is entirely outside the frustum
+     */
+    public boolean isVisible(double x, double y, double z, double radius) {
+        final double ox = x - px, oy = y - py, oz = z - pz;
+        final double depth = ox * dx + oy * dy + oz * dz;
+        if (depth < near - radius || depth > far + radius) {
+            return false;
+        }
+
+        // Distance outside each side plane
+        final double side = ox * rx + oy * ry + oz * rz;
+        final double height = ox * ux + oy * uy + oz * uz;
+        final double sideReach = depth * sinHalfFovX;
+        final double heightReach = depth * sinHalfFovY;
+        return Math.abs(side) * cosHalfFovX - sideReach <= radius
+                && Math.abs(height) * cosHalfFovY - heightReach <= radius;
+    }
+
+    /**
+     * Approximate projected size of a sphere, as a fraction of the screen
+     * height. 1 if the camera is inside or very near it
+     */
+    public double getScreenFraction(double x, double y, double z, double radius) {
+        final double depth = (x - px) * dx + (y - py) * dy + (z - pz) * dz;
+        if (depth <= radius) {
+            return 1;
+        }
+        return Math.min(1, radius / (depth * tanHalfFovY));
+    }
+}
@@ -1,11 +1,8 @@
 
 package core;
 
-import com.sun.opengl.util.j2d.TextRenderer;
 import com.sun.opengl.util.texture.Texture;
-import com.sun.opengl.util.texture.TextureIO;
 
-import net.java.joglutils.model.ModelFactory;
 import net.java.joglutils.model.ModelLoadException;
 import net.java.joglutils.model.examples.DisplayListRenderer;
 import net.java.joglutils.model.geometry.Model;
@@ -17,7 +14,13 @@ import javax.media.opengl.GLEventListener;
 import javax.media.opengl.glu.GLU;
 import java.awt.*;
 import java.io.File;
-import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import util.Profiler;
 
 /**
  * Implements Renderer using JOGL
@@ -25,25 +28,57 @@ import java.io.IOException;
  * @see Renderer
  */
 public class GLAdapter implements GLEventListener, Renderer {
-    private final static double FOV = 45;
-    private final static double NEAR_CLIP = 1;
-    private final static double FAR_CLIP = 1000;
+    final static double FOV = 45;
+    final static double NEAR_CLIP = 1;
+    final static double FAR_CLIP = 1000;
+    private final static long TEXTURE_BUDGET_BYTES = 64L * 1024 * 1024;
+    final static String MODEL_CACHE_DIR = "cache/models";
+    final static int TEXT_BASELINE = 44; // from the text position
 
     private final GLU glu = new GLU();
-    private final TextRenderer textRenderer = new TextRenderer(new Font("Times New Roman", Font.BOLD, 40));
-    private final java.util.HashMap<String, Model> modelCache = new java.util.HashMap<String, Model>();
+    private final HudText hudText = new HudText(new Font("Times New Roman", Font.BOLD, 40));
+    private final ConcurrentHashMap<String, FutureTask<Model>> modelCache = new ConcurrentHashMap<String, FutureTask<Model>>();
+    private final ModelCache modelFiles = new ModelCache(new File(MODEL_CACHE_DIR));
     private Camera camera;
     private DrawCallback callback;
     private GL gl;
     private iModel3DRenderer modelRenderer;
+    private final RenderQueue renderQueue = new RenderQueue();
+    private final Frustum frustum = new Frustum();
 
     private int width;
     private int height;
 
-    private String texturePath;
-    private Texture backgroundTexture;
+    // Frames are drawn only when something changed. Otherwise the last frame
+    // stays on screen, as buffers are swapped only after drawing
+    private final AtomicBoolean isFrameRequested = new AtomicBoolean(true);
+    private volatile FrameScheduler scheduler; // null to draw every display()
+
+    private final TextureCache textureCache = new TextureCache(TEXTURE_BUDGET_BYTES);
+    private volatile String texturePath; // requested background, set by any thread
+    private String shownTexturePath; // drawn background, acquired from the cache
+    private String pendingTexturePath; // next background, acquired and loading
+    private String failedTexturePath; // last background that failed to load, not tried again
+
+    // Latencies of a whole frame, of queuing one game object, of drawing the
+    // queued objects, and of the text
+    private final Profiler.Phase framePhase;
+    private final Profiler.Phase renderObjectPhase;
+    private final Profiler.Phase drawQueuePhase;
+    private final Profiler.Phase textPhase;
 
     public GLAdapter() {
+        this(Profiler.DEFAULT);
+    }
+
+    /**
+     * @param profiler times the frame, object and text rendering
+     */
+    public GLAdapter(Profiler profiler) {
+        this.framePhase = profiler.phase("frame");
+        this.renderObjectPhase = profiler.phase("draw object");
+        this.drawQueuePhase = profiler.phase("draw batches");
+        this.textPhase = profiler.phase("text");
     }
 
     public void setCamera(Camera camera) {
@@ -55,89 +90,95 @@ public class GLAdapter implements GLEventListener, Renderer {
     }
 
     /**
-     *
+     * Load a model, through the binary model cache. Thread-safe: a model
+     * requested by several threads at once is loaded once
+     * 
      * @param path
-     * @return
+     * @return the loaded model, or null on error
      */
-    public Model loadModel(String path) {
-        if (this.modelCache.containsKey(path)) {
-            return this.modelCache.get(path);
+    public Model loadModel(final String path) {
+        FutureTask<Model> load = this.modelCache.get(path);
+        if (load == null) {
+            final FutureTask<Model> newLoad = new FutureTask<Model>(new Callable<Model>() {
+                public Model call() throws ModelLoadException {
+                    return createModel(path);
+                }
+            });
+            load = this.modelCache.putIfAbsent(path, newLoad);
+            if (load == null) {
+                load = newLoad;
+                load.run();
+            }
         }
 
         try {
-            Model model = ModelFactory.createModel(path);
+            return load.get();
+        } catch (ExecutionException e) {
+            this.modelCache.remove(path, load); // try again next time
+            e.getCause().printStackTrace();
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
 
-            model.setUseTexture(true);
+    private Model createModel(String path) throws ModelLoadException {
+        Model model = this.modelFiles.load(path);
 
-            model.setUseLighting(true);
+        model.setUseTexture(true);
 
-            // Render the bounding box of the entire model
-            model.setRenderModelBounds(false);
+        model.setUseLighting(true);
 
-            // Render the bounding boxes for all of the objects of the model
-            model.setRenderObjectBounds(false);
+        // Render the bounding box of the entire model
+        model.setRenderModelBounds(false);
 
-            // Make the model unit size
-            model.setUnitizeSize(true);
+        // Render the bounding boxes for all of the objects of the model
+        model.setRenderObjectBounds(false);
 
-            this.modelCache.put(path, model);
+        // Make the model unit size
+        model.setUnitizeSize(true);
 
-            return model;
-        } catch (ModelLoadException e) {
-            e.printStackTrace();
-            return null;
-        }
+        return model;
     }
 
     /**
-     * Draw a game object by setting the position, orientation and scaling,
-     * and then using jogl-utils render()
+     * Queue a game object with its current position, orientation and scaling.
+     * Queued objects are drawn grouped by model once the DrawCallback is done
+     * drawing objects
      * 
      * @param gameObject object to draw
+     * @see RenderQueue
      */
     public void renderGameObject(GameObject gameObject) {
-        final GL gl = this.gl;
-
-        gl.glPushMatrix();
-
-        final double[] position = gameObject.getPosition().getData();
-        final double[] orientation = gameObject.getOrientation().getData();
-        final double[] scaling = gameObject.getScaling().getData();
-
-        gl.glRotated(orientation[2], 0, 0, 1);
-        gl.glRotated(orientation[1], 1, 0, 0);
-
-        gl.glScaled(scaling[0], scaling[1], scaling[2]);
-
-        gl.glTranslated(position[0], position[1], position[2]);
-
-        gl.glRotated(orientation[0], 0, 1, 0);
-
-        modelRenderer.render(gl, gameObject.getModel());
+        final long start = renderObjectPhase.start();
+        renderQueue.add(gameObject);
+        renderObjectPhase.stop(start);
+    }
 
-        gl.glPopMatrix();
+    /**
+     * Queue a model with its world matrix, like renderGameObject()
+     */
+    public void renderModel(Model model, double[] worldMatrix, int offset, double radius) {
+        final long start = renderObjectPhase.start();
+        renderQueue.add(model, worldMatrix, offset, radius);
+        renderObjectPhase.stop(start);
     }
 
     /**
-     * Draw the background texture on a quad
+     * Draw the background texture on a quad. <br />
+     * A newly set background is loaded by the texture cache in the background,
+     * and the previous one is drawn until it is ready
      */
     public void renderBackground() {
         final GL gl = this.gl;
 
-        // Load the background texture if not loaded
-        if (backgroundTexture == null && texturePath != null) {
-            try {
-                backgroundTexture = TextureIO.newTexture(new File(texturePath), true);
-
-                gl.glEnable(GL.GL_TEXTURE_2D);
-
-                gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MIN_FILTER, GL.GL_LINEAR);
-                gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MAG_FILTER, GL.GL_LINEAR);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        final Texture backgroundTexture = updateBackgroundTexture();
+        if (backgroundTexture == null) {
+            return; // the first background is still loading
         }
-        // End Texture
+
+        gl.glEnable(GL.GL_TEXTURE_2D);
 
         gl.glMatrixMode(GL.GL_PROJECTION);
         gl.glPushMatrix();
@@ -178,10 +219,57 @@ public class GLAdapter implements GLEventListener, Renderer {
     }
 
     /**
-     * Draw text using TextRenderer
+     * Switch to the requested background once it is loaded
+     * 
+     * @return the background texture to draw, or null if none is loaded
+     */
+    private Texture updateBackgroundTexture() {
+        final String requested = this.texturePath;
+        if (requested != null && !requested.equals(shownTexturePath) && !requested.equals(pendingTexturePath)
+                && !requested.equals(failedTexturePath)) {
+            if (pendingTexturePath != null) {
+                textureCache.release(pendingTexturePath);
+            }
+            textureCache.acquire(requested);
+            pendingTexturePath = requested;
+        }
+
+        if (pendingTexturePath != null) {
+            final Texture pending = textureCache.get(pendingTexturePath);
+            if (pending != null) {
+                pending.setTexParameteri(GL.GL_TEXTURE_MIN_FILTER, GL.GL_LINEAR);
+                pending.setTexParameteri(GL.GL_TEXTURE_MAG_FILTER, GL.GL_LINEAR);
+
+                if (shownTexturePath != null) {
+                    textureCache.release(shownTexturePath);
+                }
+                shownTexturePath = pendingTexturePath;
+                pendingTexturePath = null;
+            } else if (textureCache.isFailed(pendingTexturePath)) {
+                // Keep the current background, and stop requesting frames for it
+                textureCache.release(pendingTexturePath);
+                failedTexturePath = pendingTexturePath;
+                pendingTexturePath = null;
+            }
+        }
+
+        return shownTexturePath == null ? null : textureCache.get(shownTexturePath);
+    }
+
+    /**
+     * Draw text using the glyph atlas
      */
     public void renderText(String text, Point pos) {
-        textRenderer.draw(text, pos.x, this.height - 44 - pos.y); // OpenGL (0,0) is at down left
+        renderText(text, pos.x, pos.y);
+    }
+
+    /**
+     * Draw text using the glyph atlas. Unchanged lines reuse their quads
+     * 
+     * @see HudText
+     */
+    public void renderText(CharSequence text, int x, int y) {
+        hudText.draw(text, x, y + TEXT_BASELINE - hudText.getAscent());
     }
 
     /**
@@ -220,27 +308,83 @@ public class GLAdapter implements GLEventListener, Renderer {
 
         gl.glMatrixMode(GL.GL_MODELVIEW);
         gl.glPushMatrix();
+
+        gLDrawable.setAutoSwapBufferMode(false); // see display()
     }
 
     /**
-     * Set path to background texture (image). the image will be loaded in the next
-     * update.
+     * Set path to background texture (image). The image is loaded in the
+     * background, and replaces the current background once loaded.
      * 
      * @param path string path
      */
     public void setBackgroundTexturePath(String path) {
         texturePath = path;
-        backgroundTexture = null;
+        requestFrame();
+    }
+
+    /**
+     * Start loading a texture and keep it loaded, so that switching to it is
+     * immediate
+     */
+    public void preloadTexture(String path) {
+        textureCache.preload(path);
+    }
+
+    /**
+     * Draw a lower-detail variant of a model for objects smaller on screen than
+     * maxScreenFraction of the screen height. Objects off screen are never
+     * drawn
+     */
+    public void setLevelOfDetail(Model model, Model lowDetail, double maxScreenFraction) {
+        renderQueue.setLevelOfDetail(model, lowDetail, maxScreenFraction);
+    }
+
+    /**
+     * Draw frames on demand through this scheduler: requestFrame() asks it for
+     * a frame, and display() draws only requested frames. Null to draw on
+     * every display()
+     * <br />
+     * Repaints of the window by AWT (e.g. uncovered or restored) must then
+     * request a frame before display(), or the damaged window is not drawn
+     * again until something else requests a frame
+     */
+    public void setFrameScheduler(FrameScheduler scheduler) {
+        this.scheduler = scheduler;
+        requestFrame();
+    }
+
+    /**
+     * Draw a new frame at the next display(), and ask the scheduler for it
+     */
+    public void requestFrame() {
+        isFrameRequested.set(true);
+        final FrameScheduler scheduler = this.scheduler;
+        if (scheduler != null) {
+            scheduler.requestFrame();
+        }
+    }
+
+    /** The textures loaded by this renderer */
+    public TextureCache getTextureCache() {
+        return textureCache;
     }
 
     /**
      * Render method, called each frame
-     * Uses the internal DrawCallback to determine what to draw
+     * Uses the internal DrawCallback to determine what to draw. With a frame
+     * scheduler, draws only if a frame was requested since the last one
      * 
      * @see DrawCallback
      */
     public void display(GLAutoDrawable gLDrawable) {
+        if (!isFrameRequested.getAndSet(false) && scheduler != null) {
+            return; // nothing changed, the last frame stays on screen
+        }
+
+        final long frameStart = framePhase.start();
         final GL gl = gLDrawable.getGL();
+        textureCache.update();
         gl.glClear(GL.GL_COLOR_BUFFER_BIT | GL.GL_DEPTH_BUFFER_BIT);
         gl.glLoadIdentity();
 
@@ -252,16 +396,30 @@ public class GLAdapter implements GLEventListener, Renderer {
                 position.x(), position.y(), position.z(),
                 center.x(), center.y(), center.z(),
                 up.x(), up.y(), up.z());
+        frustum.update(position, center, up, FOV, (double) width / Math.max(height, 1), NEAR_CLIP, FAR_CLIP);
+        renderQueue.setFrustum(frustum);
 
         this.gl = gl;
         this.callback.drawObjects();
+
+        final long drawStart = drawQueuePhase.start();
+        renderQueue.flush(gl, modelRenderer);
+        drawQueuePhase.stop(drawStart);
         this.gl = null;
 
-        textRenderer.beginRendering(width, height);
+        final long textStart = textPhase.start();
+        hudText.begin(width, height);
         this.callback.drawText();
-        textRenderer.endRendering();
+        hudText.end(gl);
+        textPhase.stop(textStart);
 
         gl.glFlush();
+        gLDrawable.swapBuffers();
+        framePhase.stop(frameStart);
+
+        if (pendingTexturePath != null) {
+            requestFrame(); // until the new background is shown, or fails to load
+        }
     }
 
     public void reshape(GLAutoDrawable gLDrawable, int x, int y, int width, int height) {
@@ -278,6 +436,8 @@ public class GLAdapter implements GLEventListener, Renderer {
         glu.gluPerspective(FOV, ratio, NEAR_CLIP, FAR_CLIP);
         gl.glMatrixMode(GL.GL_MODELVIEW);
         gl.glLoadIdentity();
+
+        isFrameRequested.set(true); // draw the resized frame in this display()
     }
 
     public void displayChanged(GLAutoDrawable drawable, boolean modeChanged, boolean deviceChanged) {
@@ -12,6 +12,9 @@ public interface GameObject {
 
     Vector getPosition();
 
+    /** Get the position to draw at, interpolated between physics steps */
+    Vector getRenderPosition();
+
     Vector getOrientation();
 
     Vector getScaling();
@@ -0,0 +1,266 @@
+package core;
+
+import com.sun.opengl.util.BufferUtil;
+import com.sun.opengl.util.texture.Texture;
+import com.sun.opengl.util.texture.TextureIO;
+
+import javax.media.opengl.GL;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Draws screen text from a glyph atlas: the printable ASCII characters of a
+ * font are rasterized once into one texture, and text is drawn as textured
+ * quads, all text of a frame in one draw call.
+ * <br />
+ * Text is drawn in lines: the n-th draw() of a frame reuses the quads of the
+ * n-th draw() of the previous frame if its text and position are the same.
+ * Text is read from a CharSequence, so callers can reuse a StringBuilder
+ * instead of building new strings every frame.
+ * <br />
+ * Usage, on the GL thread: begin(), draw() every line, end()
+ */
+class HudText {
+    private static final char FIRST_CHAR = ' ';
+    private static final char LAST_CHAR = '~';
+    private static final int ATLAS_WIDTH = 512;
+    private static final int PADDING = 2;
+    private static final int FLOATS_PER_QUAD = 4 * 5; // 4 vertices of T2F_V3F
+
+    // Glyph metrics and atlas coordinates, by char - FIRST_CHAR
+    private final int[] advance = new int[LAST_CHAR - FIRST_CHAR + 1];
+    private final float[] s0 = new float[advance.length];
+    private final float[] t0 = new float[advance.length];
+    private final float[] s1 = new float[advance.length];
+    private final float[] t1 = new float[advance.length];
+    private final int cellHeight;
+    private final int ascent;
+
+    private BufferedImage atlasImage; // until uploaded
+    private Texture atlas;
+
+    private Line[] lines = new Line[8];
+    private int numOfLines;
+    private FloatBuffer vertices = BufferUtil.newFloatBuffer(64 * FLOATS_PER_QUAD);
+
+    private int width;
+    private int height;
+
+    /**
+     * Rasterize the glyphs. Doesn't need the GL context
+     */
+    HudText(Font font) {
+        final BufferedImage measure = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        final FontMetrics metrics = measure.createGraphics().getFontMetrics(font);
+        ascent = metrics.getAscent();
+        cellHeight = metrics.getAscent() + metrics.getDescent() + PADDING;
+
+        // Lay the glyphs out in rows
+        final int[] x = new int[advance.length];
+        final int[] y = new int[advance.length];
+        int rowX = 0, rowY = 0;
+        for (int i = 0; i < advance.length; i++) {
+            advance[i] = metrics.charWidth((char) (FIRST_CHAR + i));
+            if (rowX + advance[i] + PADDING > ATLAS_WIDTH) {
+                rowX = 0;
+                rowY += cellHeight;
+            }
+            x[i] = rowX;
+            y[i] = rowY;
+            rowX += advance[i] + PADDING;
+        }
+        final int atlasHeight = Integer.highestOneBit(rowY + cellHeight - 1) * 2; // power of two
+
+        atlasImage = new BufferedImage(ATLAS_WIDTH, atlasHeight, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D g = atlasImage.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setFont(font);
+        g.setColor(Color.WHITE); // tinted by the current color when drawn
+        for (int i = 0; i < advance.length; i++) {
+            g.drawString(String.valueOf((char) (FIRST_CHAR + i)), x[i], y[i] + ascent);
+
+            // The image is uploaded top row first, so t grows downwards
+            s0[i] = (float) x[i] / ATLAS_WIDTH;
+            t0[i] = (float) y[i] / atlasHeight;
+            s1[i] = (float) (x[i] + advance[i]) / ATLAS_WIDTH;
+            t1[i] = (float) (y[i] + cellHeight - PADDING) / atlasHeight;
+        }
+        g.dispose();
+    }
+
+    /** Height above the baseline, in pixels */
+    int getAscent() {
+        return ascent;
+    }
+
+    /** Start a frame of text on a screen of this size */
+    void begin(int width, int height) {
+        this.width = width;
+        this.height = height;
+        numOfLines = 0;
+    }
+
+    /**
+     * Draw a line of text
+     *
+     * @param x left of the text, in pixels from the left
+     * @param y top of the text, in pixels from the top
+     */
+    void draw(CharSequence text, int x, int y) {
+        if (numOfLines == lines.length) {
+            lines = Arrays.copyOf(lines, numOfLines * 2);
+        }
+        if (lines[numOfLines] == null) {
+            lines[numOfLines] = new Line();
+        }
+
+        final Line line = lines[numOfLines++];
+        if (!line.isSame(text, x, y)) {
+            layout(line, text, x, y);
+        }
+    }
+
+    /** Draw the text of this frame */
+    void end(GL gl) {
+        int numOfQuads = 0;
+        for (int i = 0; i < numOfLines; i++) {
+            numOfQuads += lines[i].numOfQuads;
+        }
+        if (numOfQuads == 0) {
+            return;
+        }
+
+        if (atlas == null) {
+            atlas = TextureIO.newTexture(atlasImage, false);
+            atlas.setTexParameteri(GL.GL_TEXTURE_MIN_FILTER, GL.GL_LINEAR);
+            atlas.setTexParameteri(GL.GL_TEXTURE_MAG_FILTER, GL.GL_LINEAR);
+            atlasImage = null;
+        }
+
+        if (vertices.capacity() < numOfQuads * FLOATS_PER_QUAD) {
+            vertices = BufferUtil.newFloatBuffer(numOfQuads * FLOATS_PER_QUAD * 2);
+        }
+        vertices.clear();
+        for (int i = 0; i < numOfLines; i++) {
+            vertices.put(lines[i].quads, 0, lines[i].numOfQuads * FLOATS_PER_QUAD);
+        }
+        vertices.flip();
+
+        // Pixel coordinates, (0,0) at the top left
+        gl.glMatrixMode(GL.GL_PROJECTION);
+        gl.glPushMatrix();
+        gl.glLoadIdentity();
+        gl.glOrtho(0, width, height, 0, -1, 1);
+        gl.glMatrixMode(GL.GL_MODELVIEW);
+        gl.glPushMatrix();
+        gl.glLoadIdentity();
+
+        gl.glDisable(GL.GL_LIGHTING);
+        gl.glDisable(GL.GL_DEPTH_TEST);
+        gl.glEnable(GL.GL_TEXTURE_2D);
+        gl.glEnable(GL.GL_BLEND);
+        gl.glBlendFunc(GL.GL_SRC_ALPHA, GL.GL_ONE_MINUS_SRC_ALPHA);
+        gl.glColor4f(1, 1, 1, 1);
+        atlas.bind();
+
+        gl.glInterleavedArrays(GL.GL_T2F_V3F, 0, vertices);
+        gl.glDrawArrays(GL.GL_QUADS, 0, numOfQuads * 4);
+        gl.glDisableClientState(GL.GL_VERTEX_ARRAY);
+        gl.glDisableClientState(GL.GL_TEXTURE_COORD_ARRAY);
+
+        gl.glDisable(GL.GL_BLEND);
+        gl.glEnable(GL.GL_DEPTH_TEST);
+        gl.glEnable(GL.GL_LIGHTING);
+
+        gl.glPopMatrix();
+        gl.glMatrixMode(GL.GL_PROJECTION);
+        gl.glPopMatrix();
+        gl.glMatrixMode(GL.GL_MODELVIEW);
+    }
+
+    /** Build the quads of a line, one per drawable char */
+    private void layout(Line line, CharSequence text, int x, int y) {
+        final int length = text.length();
+        line.set(text, x, y);
+        line.ensureQuads(length);
+
+        float penX = x;
+        int quads = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            if (c < FIRST_CHAR || c > LAST_CHAR) {
+                continue;
+            }
+
+            final int glyph = c - FIRST_CHAR;
+            if (c != ' ') {
+                final float left = penX, right = penX + advance[glyph];
+                final float top = y, bottom = y + cellHeight - PADDING;
+                final float[] q = line.quads;
+                int k = quads * FLOATS_PER_QUAD;
+                k = vertex(q, k, s0[glyph], t1[glyph], left, bottom);
+                k = vertex(q, k, s1[glyph], t1[glyph], right, bottom);
+                k = vertex(q, k, s1[glyph], t0[glyph], right, top);
+                vertex(q, k, s0[glyph], t0[glyph], left, top);
+                quads++;
+            }
+            penX += advance[glyph];
+        }
+        line.numOfQuads = quads;
+    }
+
+    private static int vertex(float[] q, int k, float s, float t, float x, float y) {
+        q[k] = s;
+        q[k + 1] = t;
+        q[k + 2] = x;
+        q[k + 3] = y;
+        q[k + 4] = 0;
+        return k + 5;
+    }
+
+    /** A drawn line: its text and position, and its quads */
+    private static class Line {
+        char[] chars = new char[32];
+        int length;
+        int x;
+        int y;
+        float[] quads = new float[32 * FLOATS_PER_QUAD];
+        int numOfQuads;
+
+        boolean isSame(CharSequence text, int x, int y) {
+            if (this.x != x || this.y != y || this.length != text.length()) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (chars[i] != text.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void set(CharSequence text, int x, int y) {
+            length = text.length();
+            if (chars.length < length) {
+                chars = new char[length * 2];
+            }
+            for (int i = 0; i < length; i++) {
+                chars[i] = text.charAt(i);
+            }
+            this.x = x;
+            this.y = y;
+        }
+
+        void ensureQuads(int count) {
+            if (quads.length < count * FLOATS_PER_QUAD) {
+                quads = new float[count * 2 * FLOATS_PER_QUAD];
+            }
+        }
+    }
+}
@@ -1,84 +1,123 @@
-
 package core;
 
-/** Matrix class. Responsible for creating and multiplying matrices. */
+/**
+ * Matrix class. Responsible for creating and multiplying matrices.
+ * Stored as a flat row-major array, with in-place variants that do not
+ * allocate.
+ */
 public class Matrix {
     // Dimensions
     public static final int N = 4;
 
-    private double[][] data;
+    // data[i * N + j] is the value at i,j
+    private final double[] data;
 
     private Matrix(int n) {
-        data = new double[n][n];
+        data = new double[n * n];
     }
 
     /** Get value at i,j */
     public double getValue(int i, int j) {
-        return data[i][j];
+        return data[i * N + j];
     }
 
     /** Set value at i,j */
     public void setValue(int i, int j, double value) {
-        data[i][j] = value;
+        data[i * N + j] = value;
+    }
+
+    /** Returns the row-major backing array */
+    public double[] getData() {
+        return data;
     }
 
     /** Returns (this_matrix) * (other_matrix) */
     public Matrix mul(Matrix other) {
-        Matrix result = new Matrix(N);
+        return mulInto(other, new Matrix(N));
+    }
+
+    /**
+     * dest = (this_matrix) * (other_matrix). dest may be this matrix, but not
+     * other.
+     * 
+     * @return dest
+     */
+    public Matrix mulInto(Matrix other, Matrix dest) {
+        final double[] a = this.data;
+        final double[] b = other.data;
+        final double[] r = dest.data;
 
         for (int i = 0; i < N; i++) {
+            final int row = i * N;
+            final double a0 = a[row], a1 = a[row + 1], a2 = a[row + 2], a3 = a[row + 3];
             for (int j = 0; j < N; j++) {
-                double value = 0;
-                for (int k = 0; k < N; k++) {
-                    value += this.getValue(i, k) * other.getValue(k, j);
-                }
-                result.setValue(i, j, value);
+                r[row + j] = a0 * b[j] + a1 * b[N + j] + a2 * b[2 * N + j] + a3 * b[3 * N + j];
             }
         }
 
-        return result;
+        return dest;
     }
 
     /** Multiply Matrix by vector. Return vector */
     public Vector mul(Vector vec) {
-        double x, y, z;
+        return transformInto(vec, new Vector());
+    }
 
-        x = this.getValue(0, 0) * vec.x() + this.getValue(0, 1) * vec.y() + this.getValue(0, 2) * vec.z()
-                + this.getValue(0, 3);
-        y = this.getValue(1, 0) * vec.x() + this.getValue(1, 1) * vec.y() + this.getValue(1, 2) * vec.z()
-                + this.getValue(1, 3);
-        z = this.getValue(2, 0) * vec.x() + this.getValue(2, 1) * vec.y() + this.getValue(2, 2) * vec.z()
-                + this.getValue(2, 3);
+    /**
+     * dest = (this_matrix) * vec, treating vec as a point. dest may be vec.
+     * 
+     * @return dest
+     */
+    public Vector transformInto(Vector vec, Vector dest) {
+        final double[] m = this.data;
+        final double vx = vec.x(), vy = vec.y(), vz = vec.z();
+
+        return dest.set(
+                m[0] * vx + m[1] * vy + m[2] * vz + m[3],
+                m[4] * vx + m[5] * vy + m[6] * vz + m[7],
+                m[8] * vx + m[9] * vy + m[10] * vz + m[11]);
+    }
 
-        return new Vector(x, y, z);
+    /** Set this matrix to identity, returns this matrix */
+    public Matrix setIdentity() {
+        for (int i = 0; i < data.length; i++) {
+            data[i] = 0;
+        }
+        for (int i = 0; i < N; i++) {
+            data[i * N + i] = 1;
+        }
+        return this;
     }
 
     /** Create identity matrix */
     public static Matrix createIdentity() {
-        Matrix matrix = new Matrix(N);
-        for (int i = 0; i < N; i++) {
-            matrix.setValue(i, i, 1);
-        }
-        return matrix;
+        return new Matrix(N).setIdentity();
+    }
+
+    /**
+     * Set this matrix to the axis translation of yAxis and zAxis (the x axis is
+     * their cross product), returns this matrix
+     */
+    public Matrix setAxisTranslation(Vector yAxis, Vector zAxis) {
+        setIdentity();
+
+        // xAxis = yAxis x zAxis
+        data[0] = (yAxis.y() * zAxis.z()) - (yAxis.z() * zAxis.y());
+        data[1] = (yAxis.z() * zAxis.x()) - (yAxis.x() * zAxis.z());
+        data[2] = (yAxis.x() * zAxis.y()) - (yAxis.y() * zAxis.x());
+        data[4] = yAxis.x();
+        data[5] = yAxis.y();
+        data[6] = yAxis.z();
+        data[8] = zAxis.x();
+        data[9] = zAxis.y();
+        data[10] = zAxis.z();
+
+        return this;
     }
 
     /** Create translation matrix */
     public static Matrix createAxisTranslation(Vector yAxis, Vector zAxis) {
-        Matrix matrix = createIdentity();
-
-        Vector xAxis = yAxis.cross(zAxis);
-
-        matrix.setValue(0, 0, xAxis.x());
-        matrix.setValue(0, 1, xAxis.y());
-        matrix.setValue(0, 2, xAxis.z());
-        matrix.setValue(1, 0, yAxis.x());
-        matrix.setValue(1, 1, yAxis.y());
-        matrix.setValue(1, 2, yAxis.z());
-        matrix.setValue(2, 0, zAxis.x());
-        matrix.setValue(2, 1, zAxis.y());
-        matrix.setValue(2, 2, zAxis.z());
-
-        return matrix;
+        return new Matrix(N).setAxisTranslation(yAxis, zAxis);
     }
 
     @Override
@@ -86,7 +125,7 @@ public class Matrix {
         String s = "";
         for (int i = 0; i < N; i++) {
             for (int j = 0; j < N; j++)
-                s += data[i][j] + " ";
+                s += getValue(i, j) + " ";
             s += "\n";
         }
 
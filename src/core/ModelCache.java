@@ -0,0 +1,377 @@
+package core;
+
+import net.java.joglutils.model.ModelFactory;
+import net.java.joglutils.model.ModelLoadException;
+import net.java.joglutils.model.geometry.Bounds;
+import net.java.joglutils.model.geometry.Face;
+import net.java.joglutils.model.geometry.Material;
+import net.java.joglutils.model.geometry.Mesh;
+import net.java.joglutils.model.geometry.Model;
+import net.java.joglutils.model.geometry.TexCoord;
+import net.java.joglutils.model.geometry.Vec4;
+
+import java.awt.Color;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Loads models through a binary cache of the parsed meshes.
+ * <br />
+ * The first load of a model parses it with ModelFactory and writes its
+ * materials and meshes to a cache file. Later loads memory-map the cache file
+ * instead of parsing the model again. A cache file is used only if it was
+ * written by this format version from a model file of the same size and
+ * modification time.
+ * <br />
+ * Loading is thread-safe for different paths.
+ */
+public class ModelCache {
+    private static final int MAGIC = 0x4C50534D; // "LPSM"
+    private static final int VERSION = 1;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File directory;
+
+    /**
+     * @param directory where the cache files are kept. Created when needed
+     */
+    public ModelCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Load a model, from the cache if it's up to date
+     *
+     * @throws ModelLoadException when the model cannot be parsed
+     */
+    public Model load(String path) throws ModelLoadException {
+        final File source = new File(path);
+        final File cacheFile = getCacheFile(path);
+
+        if (cacheFile.isFile()) {
+            try {
+                final Model model = read(cacheFile, path, source.length(), source.lastModified());
+                if (model != null) {
+                    return model;
+                }
+            } catch (IOException e) {
+                e.printStackTrace(); // fall back to parsing
+            } catch (RuntimeException e) {
+                e.printStackTrace(); // a corrupt cache file, parse again
+            }
+        }
+
+        final Model model = ModelFactory.createModel(path);
+        try {
+            write(model, cacheFile, source.length(), source.lastModified());
+        } catch (IOException e) {
+            e.printStackTrace(); // the model is loaded, just not cached
+        }
+        return model;
+    }
+
+    private File getCacheFile(String path) {
+        return new File(directory, path.replaceAll("[\\\\/:]", "_") + ".bin");
+    }
+
+    /**
+     * @return the model, or null if the cache file is for another version or
+     *         another revision of the model file
+     */
+    static Model read(File file, String source, long sourceLength, long sourceModified) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (in.getInt() != MAGIC || in.getInt() != VERSION || in.getLong() != sourceLength
+                    || in.getLong() != sourceModified) {
+                return null;
+            }
+
+            final Model model = new Model(source);
+
+            final int numOfMaterials = in.getInt();
+            for (int i = 0; i < numOfMaterials; i++) {
+                final Material material = new Material();
+                material.strName = readString(in);
+                material.strFile = readString(in);
+                material.ambientColor = readColor(in);
+                material.diffuseColor = readColor(in);
+                material.specularColor = readColor(in);
+                material.emissive = readColor(in);
+                material.shininess = in.getFloat();
+                material.transparency = in.getFloat();
+                model.addMaterial(material);
+            }
+
+            final int numOfMeshes = in.getInt();
+            for (int i = 0; i < numOfMeshes; i++) {
+                final Mesh mesh = new Mesh();
+                mesh.name = readString(in);
+                mesh.materialID = in.getInt();
+                mesh.hasTexture = in.get() != 0;
+                mesh.vertices = readVectors(in);
+                mesh.normals = readVectors(in);
+                mesh.texCoords = readTexCoords(in);
+                mesh.faces = readFaces(in);
+                final Bounds meshBounds = readBounds(in);
+                if (meshBounds != null) {
+                    mesh.bounds = meshBounds;
+                }
+                mesh.numOfVerts = mesh.vertices == null ? 0 : mesh.vertices.length;
+                mesh.numTexCoords = mesh.texCoords == null ? 0 : mesh.texCoords.length;
+                mesh.numOfFaces = mesh.faces == null ? 0 : mesh.faces.length;
+                model.addMesh(mesh);
+            }
+
+            final Bounds bounds = readBounds(in);
+            if (bounds != null) {
+                model.setBounds(bounds);
+            }
+            final Vec4 center = readVector(in);
+            if (center != null) {
+                model.setCenterPoint(center);
+            }
+            return model;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Write a model to a cache file. The file is replaced only once it is
+     * completely written
+     */
+    static void write(Model model, File file, long sourceLength, long sourceModified) throws IOException {
+        file.getParentFile().mkdirs();
+        final File temp = new File(file.getPath() + ".tmp" + Thread.currentThread().getId());
+
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sourceLength);
+            out.writeLong(sourceModified);
+
+            out.writeInt(model.getNumberOfMaterials());
+            for (int i = 0; i < model.getNumberOfMaterials(); i++) {
+                final Material material = model.getMaterial(i);
+                writeString(out, material.strName);
+                writeString(out, material.strFile);
+                writeColor(out, material.ambientColor);
+                writeColor(out, material.diffuseColor);
+                writeColor(out, material.specularColor);
+                writeColor(out, material.emissive);
+                out.writeFloat(material.shininess);
+                out.writeFloat(material.transparency);
+            }
+
+            out.writeInt(model.getNumberOfMeshes());
+            for (int i = 0; i < model.getNumberOfMeshes(); i++) {
+                final Mesh mesh = model.getMesh(i);
+                writeString(out, mesh.name);
+                out.writeInt(mesh.materialID);
+                out.writeByte(mesh.hasTexture ? 1 : 0);
+                writeVectors(out, mesh.vertices, mesh.numOfVerts);
+                writeVectors(out, mesh.normals, mesh.numOfVerts);
+                writeTexCoords(out, mesh.texCoords, mesh.numTexCoords);
+                writeFaces(out, mesh.faces, mesh.numOfFaces);
+                writeBounds(out, mesh.bounds);
+            }
+
+            writeBounds(out, model.getBounds());
+            writeVector(out, model.getCenterPoint());
+        } finally {
+            out.close();
+        }
+
+        if (file.exists() && !file.delete() || !temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    // Arrays are written as their length followed by the items, with -1 for
+    // null. The counts in a mesh may be smaller than its arrays
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = s.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        final int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static void writeColor(DataOutputStream out, Color color) throws IOException {
+        out.writeByte(color == null ? 0 : 1);
+        out.writeInt(color == null ? 0 : color.getRGB());
+    }
+
+    private static Color readColor(ByteBuffer in) {
+        final boolean isPresent = in.get() != 0;
+        final int argb = in.getInt();
+        return isPresent ? new Color(argb, true) : null;
+    }
+
+    private static void writeVector(DataOutputStream out, Vec4 v) throws IOException {
+        out.writeByte(v == null ? 0 : 1);
+        out.writeFloat(v == null ? 0 : v.x);
+        out.writeFloat(v == null ? 0 : v.y);
+        out.writeFloat(v == null ? 0 : v.z);
+        out.writeFloat(v == null ? 0 : v.w);
+    }
+
+    private static Vec4 readVector(ByteBuffer in) {
+        final boolean isPresent = in.get() != 0;
+        final Vec4 v = new Vec4(in.getFloat(), in.getFloat(), in.getFloat(), in.getFloat());
+        return isPresent ? v : null;
+    }
+
+    private static void writeVectors(DataOutputStream out, Vec4[] vectors, int count) throws IOException {
+        if (vectors == null) {
+            out.writeInt(-1);
+            return;
+        }
+        count = Math.min(count, vectors.length);
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeFloat(vectors[i].x);
+            out.writeFloat(vectors[i].y);
+            out.writeFloat(vectors[i].z);
+            out.writeFloat(vectors[i].w);
+        }
+    }
+
+    private static Vec4[] readVectors(ByteBuffer in) {
+        final int count = in.getInt();
+        if (count < 0) {
+            return null;
+        }
+        final Vec4[] vectors = new Vec4[count];
+        for (int i = 0; i < count; i++) {
+            vectors[i] = new Vec4(in.getFloat(), in.getFloat(), in.getFloat(), in.getFloat());
+        }
+        return vectors;
+    }
+
+    private static void writeTexCoords(DataOutputStream out, TexCoord[] coords, int count) throws IOException {
+        if (coords == null) {
+            out.writeInt(-1);
+            return;
+        }
+        count = Math.min(count, coords.length);
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeFloat(coords[i].u);
+            out.writeFloat(coords[i].v);
+        }
+    }
+
+    private static TexCoord[] readTexCoords(ByteBuffer in) {
+        final int count = in.getInt();
+        if (count < 0) {
+            return null;
+        }
+        final TexCoord[] coords = new TexCoord[count];
+        for (int i = 0; i < count; i++) {
+            coords[i] = new TexCoord(in.getFloat(), in.getFloat());
+        }
+        return coords;
+    }
+
+    private static void writeFaces(DataOutputStream out, Face[] faces, int count) throws IOException {
+        if (faces == null) {
+            out.writeInt(-1);
+            return;
+        }
+        count = Math.min(count, faces.length);
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeInt(faces[i].materialID);
+            writeInts(out, faces[i].vertIndex);
+            writeInts(out, faces[i].coordIndex);
+            writeInts(out, faces[i].normalIndex);
+        }
+    }
+
+    private static Face[] readFaces(ByteBuffer in) {
+        final int count = in.getInt();
+        if (count < 0) {
+            return null;
+        }
+        final Face[] faces = new Face[count];
+        for (int i = 0; i < count; i++) {
+            final int materialID = in.getInt();
+            final int[] vertIndex = readInts(in);
+
+            final Face face = new Face(vertIndex == null ? 0 : vertIndex.length);
+            face.materialID = materialID;
+            face.vertIndex = vertIndex;
+            face.coordIndex = readInts(in);
+            face.normalIndex = readInts(in);
+            faces[i] = face;
+        }
+        return faces;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static int[] readInts(ByteBuffer in) {
+        final int count = in.getInt();
+        if (count < 0) {
+            return null;
+        }
+        final int[] values = new int[count];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + count * 4);
+        return values;
+    }
+
+    private static void writeBounds(DataOutputStream out, Bounds bounds) throws IOException {
+        out.writeByte(bounds == null ? 0 : 1);
+        writeVector(out, bounds == null ? null : bounds.min);
+        writeVector(out, bounds == null ? null : bounds.max);
+    }
+
+    private static Bounds readBounds(ByteBuffer in) {
+        final boolean isPresent = in.get() != 0;
+        final Vec4 min = readVector(in);
+        final Vec4 max = readVector(in);
+        if (!isPresent) {
+            return null;
+        }
+        final Bounds bounds = new Bounds();
+        bounds.min = min;
+        bounds.max = max;
+        return bounds;
+    }
+}
@@ -0,0 +1,50 @@
+package core;
+
+import java.awt.Point;
+
+import net.java.joglutils.model.geometry.Model;
+
+/**
+ * Implements Renderer without drawing anything, for running the simulation
+ * headless (no display or GPU). Models are never loaded.
+ * 
+ * @see Renderer
+ */
+public class NullRenderer implements Renderer {
+    public void setCamera(Camera camera) {
+    }
+
+    public void setDrawCallback(DrawCallback callback) {
+    }
+
+    /**
+     * @return always null, game objects have collision shapes only
+     */
+    public Model loadModel(String path) {
+        return null;
+    }
+
+    public void renderGameObject(GameObject gameObject) {
+    }
+
+    public void renderModel(Model model, double[] worldMatrix, int offset, double radius) {
+    }
+
+    public void renderText(String text, Point pos) {
+    }
+
+    public void renderText(CharSequence text, int x, int y) {
+    }
+
+    public void renderBackground() {
+    }
+
+    public void setBackgroundTexturePath(String path) {
+    }
+
+    public void preloadTexture(String path) {
+    }
+
+    public void requestFrame() {
+    }
+}
@@ -0,0 +1,263 @@
+package core;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import javax.media.opengl.GL;
+
+import net.java.joglutils.model.geometry.Model;
+import net.java.joglutils.model.iModel3DRenderer;
+
+/**
+ * Collects the game objects drawn in a frame and draws them grouped by model.
+ * <br />
+ * The transform of each object (rotation, scaling and translation) is computed
+ * on the CPU when it is added, into one per-frame buffer of column-major
+ * matrices. Drawing an object then takes a single glMultMatrixd instead of
+ * five matrix calls, and all objects of a model are drawn one after the other.
+ * <br />
+ * Objects may also be added with a precomputed world matrix, e.g. of a
+ * SceneNode, which is copied as is.
+ * <br />
+ * Objects whose bounding sphere is outside the frustum are not queued, and
+ * models with lower-detail variants are swapped for them when small on screen.
+ *
+ * @see GLAdapter
+ */
+class RenderQueue {
+    private static final int MATRIX_SIZE = 16;
+    private static final double DEG_TO_RAD = Math.PI / 180;
+    // Models are unit size, within a cube of half-size 1 around their center
+    private static final double MODEL_BOUNDING_RADIUS = Math.sqrt(3);
+
+    // Models get a group index the first time they are drawn, and keep it
+    private final Map<Model, Integer> groupOfModel = new IdentityHashMap<Model, Integer>();
+    private Model[] groupModels = new Model[16];
+
+    private Frustum frustum; // null to draw everything
+    private final Map<Model, LevelOfDetail> levelsOfDetail = new IdentityHashMap<Model, LevelOfDetail>();
+    private int culled;
+
+    // Per-frame buffers, reused
+    private int size;
+    private int[] groups = new int[64];
+    private double[] transforms = new double[64 * MATRIX_SIZE];
+    private int[] groupStarts = new int[16 + 1];
+    private int[] order = new int[64];
+
+    /** Number of objects added since the last flush */
+    public int size() {
+        return size;
+    }
+
+    /** Number of objects culled since the last flush */
+    public int getCulledCount() {
+        return culled;
+    }
+
+    /** Cull against this frustum from now on, null to draw everything */
+    public void setFrustum(Frustum frustum) {
+        this.frustum = frustum;
+    }
+
+    /**
+     * Draw lowDetail instead of model when the object is smaller on screen than
+     * maxScreenFraction of the screen height. lowDetail may have a lower
+     * level of its own
+     */
+    public void setLevelOfDetail(Model model, Model lowDetail, double maxScreenFraction) {
+        levelsOfDetail.put(model, new LevelOfDetail(lowDetail, maxScreenFraction));
+    }
+
+    /**
+     * Queue a game object with its current position, orientation and scaling.
+     * Later changes to the object are not drawn in this frame
+     */
+    public void add(GameObject gameObject) {
+        final Model model = gameObject.getModel();
+        if (model == null) {
+            return;
+        }
+
+        ensureCapacity();
+        computeTransform(gameObject.getRenderPosition().getData(), gameObject.getOrientation().getData(),
+                gameObject.getScaling().getData(), transforms, size * MATRIX_SIZE);
+        addTransformed(model, gameObject.getRadius());
+    }
+
+    /**
+     * Queue a model with a world matrix, column-major at offset
+     * 
+     * @param radius of the object, at least, for culling
+     */
+    public void add(Model model, double[] worldMatrix, int offset, double radius) {
+        if (model == null) {
+            return;
+        }
+
+        ensureCapacity();
+        System.arraycopy(worldMatrix, offset, transforms, size * MATRIX_SIZE, MATRIX_SIZE);
+        addTransformed(model, radius);
+    }
+
+    private void ensureCapacity() {
+        if (size == groups.length) {
+            groups = Arrays.copyOf(groups, size * 2);
+            order = new int[size * 2];
+            transforms = Arrays.copyOf(transforms, size * 2 * MATRIX_SIZE);
+        }
+    }
+
+    /** Cull, pick the level of detail and queue the object whose transform is next */
+    private void addTransformed(Model model, double objectRadius) {
+        final int offset = size * MATRIX_SIZE;
+        Model drawn = model;
+        if (frustum != null) {
+            // The translation column is the center. Scaling stretches the unit
+            // model, the collision radius covers objects with a wider footprint
+            final double x = transforms[offset + 12], y = transforms[offset + 13], z = transforms[offset + 14];
+            final double radius = Math.max(objectRadius, MODEL_BOUNDING_RADIUS * maxScale(offset));
+            if (!frustum.isVisible(x, y, z, radius)) {
+                culled++;
+                return;
+            }
+
+            if (!levelsOfDetail.isEmpty()) {
+                final double screenFraction = frustum.getScreenFraction(x, y, z, radius);
+                LevelOfDetail lod = levelsOfDetail.get(drawn);
+                while (lod != null && screenFraction < lod.maxScreenFraction) {
+                    drawn = lod.model;
+                    lod = levelsOfDetail.get(drawn);
+                }
+            }
+        }
+
+        groups[size] = groupOf(drawn);
+        size++;
+    }
+
+    /** Largest scaling of a queued transform: the longest of its axes */
+    private double maxScale(int offset) {
+        final double[] m = transforms;
+        double max = 0;
+        for (int column = 0; column < 3; column++) {
+            final int c = offset + column * 4;
+            max = Math.max(max, m[c] * m[c] + m[c + 1] * m[c + 1] + m[c + 2] * m[c + 2]);
+        }
+        return Math.sqrt(max);
+    }
+
+    /**
+     * Draw all queued objects, model by model, and empty the queue
+     *
+     * @return the number of model groups drawn
+     */
+    public int flush(GL gl, iModel3DRenderer modelRenderer) {
+        final int numOfGroups = groupOfModel.size();
+
+        // Counting sort of the objects by group, stable within a group
+        Arrays.fill(groupStarts, 0, numOfGroups + 1, 0);
+        for (int i = 0; i < size; i++) {
+            groupStarts[groups[i] + 1]++;
+        }
+        for (int g = 0; g < numOfGroups; g++) {
+            groupStarts[g + 1] += groupStarts[g];
+        }
+        for (int i = 0; i < size; i++) {
+            order[groupStarts[groups[i]]++] = i;
+        }
+
+        int drawnGroups = 0;
+        int from = 0;
+        for (int g = 0; g < numOfGroups; g++) {
+            final int to = groupStarts[g]; // the end of the group after the sort
+            if (from == to) {
+                continue;
+            }
+
+            final Model model = groupModels[g];
+            for (int k = from; k < to; k++) {
+                gl.glPushMatrix();
+                gl.glMultMatrixd(transforms, order[k] * MATRIX_SIZE);
+                modelRenderer.render(gl, model);
+                gl.glPopMatrix();
+            }
+
+            from = to;
+            drawnGroups++;
+        }
+
+        size = 0;
+        culled = 0;
+        return drawnGroups;
+    }
+
+    /** A lower-detail model, and when to draw it */
+    private static class LevelOfDetail {
+        final Model model;
+        final double maxScreenFraction;
+
+        LevelOfDetail(Model model, double maxScreenFraction) {
+            this.model = model;
+            this.maxScreenFraction = maxScreenFraction;
+        }
+    }
+
+    private int groupOf(Model model) {
+        final Integer group = groupOfModel.get(model);
+        if (group != null) {
+            return group;
+        }
+
+        final int newGroup = groupOfModel.size();
+        if (newGroup == groupModels.length) {
+            groupModels = Arrays.copyOf(groupModels, newGroup * 2);
+            groupStarts = new int[newGroup * 2 + 1];
+        }
+        groupModels[newGroup] = model;
+        groupOfModel.put(model, newGroup);
+        return newGroup;
+    }
+
+    /**
+     * The column-major matrix of Rz(orientation z) Rx(orientation y) S(scaling)
+     * T(position) Ry(orientation x), the same transform as the glRotated /
+     * glScaled / glTranslated calls GLAdapter used to make. Angles are in degrees
+     */
+    static void computeTransform(double[] position, double[] orientation, double[] scaling, double[] dest,
+            int offset) {
+        final double ay = orientation[0] * DEG_TO_RAD;
+        final double ax = orientation[1] * DEG_TO_RAD;
+        final double az = orientation[2] * DEG_TO_RAD;
+        final double cy = Math.cos(ay), sy = Math.sin(ay);
+        final double cx = Math.cos(ax), sx = Math.sin(ax);
+        final double cz = Math.cos(az), sz = Math.sin(az);
+
+        // B = Rz Rx S
+        final double b00 = cz * scaling[0], b01 = -sz * cx * scaling[1], b02 = sz * sx * scaling[2];
+        final double b10 = sz * scaling[0], b11 = cz * cx * scaling[1], b12 = -cz * sx * scaling[2];
+        final double b20 = 0, b21 = sx * scaling[1], b22 = cx * scaling[2];
+
+        // Linear part B Ry, by column
+        dest[offset] = b00 * cy - b02 * sy;
+        dest[offset + 1] = b10 * cy - b12 * sy;
+        dest[offset + 2] = b20 * cy - b22 * sy;
+        dest[offset + 3] = 0;
+        dest[offset + 4] = b01;
+        dest[offset + 5] = b11;
+        dest[offset + 6] = b21;
+        dest[offset + 7] = 0;
+        dest[offset + 8] = b00 * sy + b02 * cy;
+        dest[offset + 9] = b10 * sy + b12 * cy;
+        dest[offset + 10] = b20 * sy + b22 * cy;
+        dest[offset + 11] = 0;
+
+        // Translation B p
+        final double px = position[0], py = position[1], pz = position[2];
+        dest[offset + 12] = b00 * px + b01 * py + b02 * pz;
+        dest[offset + 13] = b10 * px + b11 * py + b12 * pz;
+        dest[offset + 14] = b20 * px + b21 * py + b22 * pz;
+        dest[offset + 15] = 1;
+    }
+}
@@ -21,7 +21,7 @@ public interface Renderer {
     void setDrawCallback(DrawCallback callback);
 
     /**
-     * Load a 3D model from the specified path
+     * Load a 3D model from the specified path. May be called from any thread
      * 
      * @return the loaded model, or null on error
      */
@@ -34,11 +34,26 @@ public interface Renderer {
      */
     void renderGameObject(GameObject gameObject);
 
+    /**
+     * Draw a model with a world matrix, e.g. of a SceneNode. The matrix is
+     * read during the call
+     * 
+     * @param worldMatrix column-major, as in OpenGL, at offset
+     * @param radius      of the object, at least, for culling
+     */
+    void renderModel(Model model, double[] worldMatrix, int offset, double radius);
+
     /**
      * Render text in a position
      */
     void renderText(String text, Point pos);
 
+    /**
+     * Render text in a position. The text is read during the call, so a
+     * StringBuilder can be reused for every frame
+     */
+    void renderText(CharSequence text, int x, int y);
+
     /**
      * Render the background image that was set earlier
      */
@@ -50,4 +65,17 @@ public interface Renderer {
      * @param path
      */
     void setBackgroundTexturePath(String path);
+
+    /**
+     * Start loading a texture and keep it loaded, so that a later
+     * setBackgroundTexturePath(path) shows it immediately
+     */
+    void preloadTexture(String path);
+
+    /**
+     * Ask for a frame to be drawn, because what the DrawCallback draws changed.
+     * Renderers that draw on demand draw no frame otherwise. May be called from
+     * any thread
+     */
+    void requestFrame();
 }
@@ -0,0 +1,180 @@
+package core;
+
+/**
+ * A node of the scene graph: a transform relative to a parent node, and its
+ * world matrix.
+ * <br />
+ * The local transform is made of a position, an orientation and a scaling,
+ * combined as in RenderQueue.computeTransform(). The world matrix is the
+ * parent's world matrix times the local one, column-major as in OpenGL. It is
+ * cached, and recomputed only when the local transform or an ancestor's changed
+ * since it was last computed.
+ * <br />
+ * A node also keeps its position before the last physics step, so that
+ * renderers can interpolate its world position. Only rotations and scalings of
+ * the current step are drawn.
+ * <br />
+ * Not thread-safe: a scene graph belongs to one thread.
+ */
+public class SceneNode {
+    private static final double DEG_TO_RAD = Math.PI / 180;
+
+    private SceneNode parent;
+
+    // Local transform
+    private final double[] position = new double[3];
+    private final double[] previousPosition = new double[3];
+    private final double[] orientation = new double[3];
+    private final double[] scaling = { 1, 1, 1 };
+    private boolean isDirty = true;
+
+    // Cached world matrix, and the parent's version it was computed from
+    private final double[] world = new double[16];
+    private final double[] local = new double[16];
+    private int version; // incremented when the world matrix changes
+    private int parentVersion;
+
+    public SceneNode() {
+    }
+
+    public SceneNode(SceneNode parent) {
+        this.parent = parent;
+    }
+
+    public SceneNode getParent() {
+        return parent;
+    }
+
+    /** Move the node under another parent, or to the root with null */
+    public void setParent(SceneNode parent) {
+        if (this.parent != parent) {
+            this.parent = parent;
+            isDirty = true;
+        }
+    }
+
+    /** Set the position, and the previous position to the same (no motion) */
+    public void setPosition(double x, double y, double z) {
+        setPosition(x, y, z, x, y, z);
+    }
+
+    /**
+     * Set the position after the last step, and before it
+     */
+    public void setPosition(double x, double y, double z, double previousX, double previousY, double previousZ) {
+        if (set(position, x, y, z)) {
+            isDirty = true;
+        }
+        set(previousPosition, previousX, previousY, previousZ);
+    }
+
+    /** Angles in degrees, as in GameObject.getOrientation() */
+    public void setOrientation(double x, double y, double z) {
+        if (set(orientation, x, y, z)) {
+            isDirty = true;
+        }
+    }
+
+    public void setScaling(double x, double y, double z) {
+        if (set(scaling, x, y, z)) {
+            isDirty = true;
+        }
+    }
+
+    /**
+     * The world matrix, recomputed if needed. The array is owned by the node
+     * and changes with it
+     */
+    public double[] getWorldMatrix() {
+        update();
+        return world;
+    }
+
+    /**
+     * How far the origin of the node moved in the world in the last step, from
+     * the previous positions of the node and its ancestors to the current ones,
+     * with the current rotations
+     */
+    public void getMotion(double[] dest, int offset) {
+        update();
+
+        // The local matrix is L = B Ry, its translation B p. Moving p by d
+        // moves the world translation by P B d, where P is the parent's
+        // linear part, B = L Ry^-1
+        final double dx = position[0] - previousPosition[0];
+        final double dy = position[1] - previousPosition[1];
+        final double dz = position[2] - previousPosition[2];
+        final double ay = orientation[0] * DEG_TO_RAD;
+        final double cy = Math.cos(ay), sy = Math.sin(ay);
+
+        final double mx = motionRow(0, cy, sy, dx, dy, dz);
+        final double my = motionRow(1, cy, sy, dx, dy, dz);
+        final double mz = motionRow(2, cy, sy, dx, dy, dz);
+
+        if (parent == null) {
+            dest[offset] = mx;
+            dest[offset + 1] = my;
+            dest[offset + 2] = mz;
+            return;
+        }
+
+        parent.getMotion(dest, offset);
+        final double[] p = parent.world;
+        dest[offset] += p[0] * mx + p[4] * my + p[8] * mz;
+        dest[offset + 1] += p[1] * mx + p[5] * my + p[9] * mz;
+        dest[offset + 2] += p[2] * mx + p[6] * my + p[10] * mz;
+    }
+
+    /** A row of B d */
+    private double motionRow(int row, double cy, double sy, double dx, double dy, double dz) {
+        final double b0 = local[row] * cy + local[8 + row] * sy;
+        final double b1 = local[4 + row];
+        final double b2 = -local[row] * sy + local[8 + row] * cy;
+        return b0 * dx + b1 * dy + b2 * dz;
+    }
+
+    /** Recompute the world matrix if the node or an ancestor changed */
+    private void update() {
+        if (parent != null) {
+            parent.update();
+            if (parent.version != parentVersion) {
+                isDirty = true;
+            }
+        }
+        if (!isDirty) {
+            return;
+        }
+
+        RenderQueue.computeTransform(position, orientation, scaling, local, 0);
+        if (parent == null) {
+            System.arraycopy(local, 0, world, 0, 16);
+        } else {
+            multiply(parent.world, local, world);
+            parentVersion = parent.version;
+        }
+        version++;
+        isDirty = false;
+    }
+
+    /** dest = a * b, column-major affine matrices */
+    private static void multiply(double[] a, double[] b, double[] dest) {
+        for (int column = 0; column < 4; column++) {
+            final double c0 = b[column * 4], c1 = b[column * 4 + 1], c2 = b[column * 4 + 2];
+            final double c3 = b[column * 4 + 3];
+            for (int row = 0; row < 4; row++) {
+                dest[column * 4 + row] = a[row] * c0 + a[4 + row] * c1 + a[8 + row] * c2 + a[12 + row] * c3;
+            }
+        }
+    }
+
+    /** @return whether the values changed */
+    private static boolean set(double[] array, double x, double y, double z) {
+        if (array[0] == x && array[1] == y && array[2] == z) {
+            return false;
+        }
+        array[0] = x;
+        array[1] = y;
+        array[2] = z;
+        return true;
+    }
+}
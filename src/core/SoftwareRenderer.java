@@ -0,0 +1,714 @@
+package core;
+
+import net.java.joglutils.model.ModelLoadException;
+import net.java.joglutils.model.geometry.Face;
+import net.java.joglutils.model.geometry.Material;
+import net.java.joglutils.model.geometry.Mesh;
+import net.java.joglutils.model.geometry.Model;
+import net.java.joglutils.model.geometry.TexCoord;
+import net.java.joglutils.model.geometry.Vec4;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import util.ParallelFor;
+
+/**
+ * Implements Renderer in pure Java, into an int[] ARGB framebuffer, without
+ * OpenGL or a GPU. Used to capture frames on headless machines, e.g. for
+ * golden-image comparisons and rendering benchmarks.
+ * <br />
+ * Draws the same scene as GLAdapter: the background stretched over the
+ * screen, game objects as depth-tested, textured and flat-lit triangles
+ * with the same camera and projection, and text with the same font.
+ * <br />
+ * Triangles are set up when the objects are drawn, binned into screen tiles
+ * and rasterized tile by tile on all cores. Each tile draws its triangles in
+ * the order they were drawn, so the image doesn't depend on the number of
+ * threads.
+ * <br />
+ * Usage: set the camera and draw callback, then call renderFrame() and read
+ * getPixels() or getImage().
+ *
+ * @see Renderer
+ */
+public class SoftwareRenderer implements Renderer {
+    private static final int TILE_SIZE = 32;
+    private static final int MIN_PARALLEL_TILES = 4;
+    private static final int CLEAR_COLOR = 0xFF000000;
+    private static final Font TEXT_FONT = new Font("Times New Roman", Font.BOLD, 40);
+
+    // Flat lighting: ambient plus a diffuse light from above, like GLAdapter's
+    private static final double AMBIENT = 0.6;
+    private static final double DIFFUSE = 0.4;
+
+    // Triangle setup: per vertex screen x, y, depth, 1/w, u/w, v/w
+    private static final int VERTEX_FLOATS = 6;
+    private static final int TRIANGLE_FLOATS = 3 * VERTEX_FLOATS;
+
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+    private final float[] depth;
+    private final BufferedImage image;
+    private final ModelCache modelFiles = new ModelCache(new File(GLAdapter.MODEL_CACHE_DIR));
+    private final Map<String, Model> models = new HashMap<String, Model>();
+    private final Map<String, Texture> textures = new HashMap<String, Texture>();
+    private final Map<Model, ModelData> modelData = new IdentityHashMap<Model, ModelData>();
+
+    private Camera camera;
+    private DrawCallback callback;
+    private boolean isParallel = true;
+
+    private String backgroundPath;
+    private boolean isBackgroundDrawn;
+
+    // The triangles of the current frame
+    private float[] triangles = new float[1024 * TRIANGLE_FLOATS];
+    private int[] triangleColors = new int[1024];
+    private Texture[] triangleTextures = new Texture[1024];
+    private int numOfTriangles;
+
+    // Triangle indices per tile
+    private final int tilesX;
+    private final int tilesY;
+    private final int[][] bins;
+    private final int[] binSizes;
+
+    private final List<String> texts = new ArrayList<String>();
+    private final List<Point> textPositions = new ArrayList<Point>();
+
+    // Per-frame transforms, column-major like OpenGL
+    private final double[] view = new double[16];
+    private final double[] projection = new double[16];
+    private final double[] viewProjection = new double[16];
+    private final double[] modelMatrix = new double[16];
+    private final double[] unitizedMatrix = new double[16]; // modelMatrix of the unitized model
+    private final double[] modelViewProjection = new double[16];
+    private float[] clip = new float[0]; // clip space x, y, z, w per vertex
+    private float[] world = new float[0]; // world space x, y, z per vertex
+    private int numOfVertices; // of the mesh in clip and world
+
+    public SoftwareRenderer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        this.depth = new float[width * height];
+
+        tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        bins = new int[tilesX * tilesY][64];
+        binSizes = new int[tilesX * tilesY];
+    }
+
+    public void setCamera(Camera camera) {
+        this.camera = camera;
+    }
+
+    public void setDrawCallback(DrawCallback callback) {
+        this.callback = callback;
+    }
+
+    /** Rasterize tiles on all cores (the default), or on the calling thread */
+    public void setParallel(boolean isParallel) {
+        this.isParallel = isParallel;
+    }
+
+    /** The framebuffer, ARGB by rows from the top left */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    /** The framebuffer as an image, sharing its pixels */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Load a model through the binary model cache, like GLAdapter
+     *
+     * @return the loaded model, or null on error
+     */
+    public synchronized Model loadModel(String path) {
+        Model model = models.get(path);
+        if (model == null) {
+            try {
+                model = modelFiles.load(path);
+            } catch (ModelLoadException e) {
+                e.printStackTrace();
+                return null;
+            }
+            models.put(path, model);
+        }
+        return model;
+    }
+
+    /**
+     * Render a frame: draw the objects and text of the DrawCallback
+     */
+    public void renderFrame() {
+        Arrays.fill(binSizes, 0);
+        numOfTriangles = 0;
+        isBackgroundDrawn = false;
+        texts.clear();
+        textPositions.clear();
+
+        setupView();
+        callback.drawObjects();
+
+        final int numOfTiles = tilesX * tilesY;
+        final int chunks = ParallelFor.chunks(numOfTiles, MIN_PARALLEL_TILES, isParallel);
+        ParallelFor.run(numOfTiles, chunks, rasterizeTiles);
+
+        callback.drawText();
+        drawTexts();
+    }
+
+    /**
+     * Draw a game object: transform its model's triangles and bin them into
+     * the tiles they cover
+     */
+    public void renderGameObject(GameObject gameObject) {
+        if (gameObject.getModel() == null) {
+            return;
+        }
+        RenderQueue.computeTransform(gameObject.getRenderPosition().getData(), gameObject.getOrientation().getData(),
+                gameObject.getScaling().getData(), modelMatrix, 0);
+        renderModel(gameObject.getModel());
+    }
+
+    /**
+     * Draw a model with a world matrix, like renderGameObject()
+     */
+    public void renderModel(Model model, double[] worldMatrix, int offset, double radius) {
+        if (model == null) {
+            return;
+        }
+        System.arraycopy(worldMatrix, offset, modelMatrix, 0, 16);
+        renderModel(model);
+    }
+
+    /** Draw a model with modelMatrix */
+    private void renderModel(Model model) {
+        final ModelData data = getModelData(model);
+        multiply(modelMatrix, data.unitize, unitizedMatrix);
+        multiply(viewProjection, unitizedMatrix, modelViewProjection);
+
+        for (int m = 0; m < model.getNumberOfMeshes(); m++) {
+            final Mesh mesh = model.getMesh(m);
+            if (mesh.vertices == null || mesh.faces == null) {
+                continue;
+            }
+
+            transformVertices(mesh);
+
+            final Material material = mesh.materialID >= 0 && mesh.materialID < model.getNumberOfMaterials()
+                    ? model.getMaterial(mesh.materialID)
+                    : null;
+            final int baseColor = material != null && material.diffuseColor != null
+                    ? material.diffuseColor.getRGB()
+                    : 0xFFFFFFFF;
+            final Texture texture = mesh.hasTexture ? data.textures[m] : null;
+
+            for (int f = 0; f < mesh.numOfFaces && f < mesh.faces.length; f++) {
+                final Face face = mesh.faces[f];
+                for (int k = 2; k < face.vertIndex.length; k++) { // a fan, for faces above 3 vertices
+                    addTriangle(mesh, face, 0, k - 1, k, baseColor, texture);
+                }
+            }
+        }
+    }
+
+    /**
+     * Draw text, after the objects
+     */
+    public void renderText(String text, Point pos) {
+        renderText(text, pos.x, pos.y);
+    }
+
+    public void renderText(CharSequence text, int x, int y) {
+        texts.add(text.toString());
+        textPositions.add(new Point(x, y + GLAdapter.TEXT_BASELINE));
+    }
+
+    /**
+     * Draw the background image stretched over the screen, behind the objects
+     */
+    public void renderBackground() {
+        isBackgroundDrawn = backgroundPath != null;
+    }
+
+    public void setBackgroundTexturePath(String path) {
+        backgroundPath = path;
+        if (path != null) {
+            loadTexture(path);
+        }
+    }
+
+    public void preloadTexture(String path) {
+        loadTexture(path);
+    }
+
+    /** Frames are drawn by renderFrame() only */
+    public void requestFrame() {
+    }
+
+    private void setupView() {
+        final Vector position = camera.getPosition();
+        final Vector center = camera.getCenter();
+        final Vector up = camera.getUp();
+        lookAt(position, center, up, view);
+        perspective(GLAdapter.FOV, (double) width / height, GLAdapter.NEAR_CLIP, GLAdapter.FAR_CLIP, projection);
+        multiply(projection, view, viewProjection);
+    }
+
+    /** Transform the vertices of a mesh to world and clip space */
+    private void transformVertices(Mesh mesh) {
+        final int count = Math.min(mesh.numOfVerts, mesh.vertices.length);
+        if (clip.length < count * 4) {
+            clip = new float[count * 8];
+            world = new float[count * 6];
+        }
+        numOfVertices = count;
+
+        final double[] m = unitizedMatrix, p = modelViewProjection;
+        for (int i = 0; i < count; i++) {
+            final Vec4 v = mesh.vertices[i];
+            for (int row = 0; row < 4; row++) {
+                clip[i * 4 + row] = (float) (p[row] * v.x + p[4 + row] * v.y + p[8 + row] * v.z + p[12 + row]);
+            }
+            for (int row = 0; row < 3; row++) {
+                world[i * 3 + row] = (float) (m[row] * v.x + m[4 + row] * v.y + m[8 + row] * v.z + m[12 + row]);
+            }
+        }
+    }
+
+    // A triangle clipped against the near plane has up to 4 vertices of
+    // clip x, y, z, w, u, v
+    private final float[] polygon = new float[4 * 6];
+    private final float[] input = new float[3 * 6];
+
+    // Scratch of addTriangle() and emitTriangle(), by triangle corner
+    private final int[] corners = new int[3];
+    private final int[] coords = new int[3];
+    private final int[] polygonCorners = new int[3];
+
+    /** Light, clip against the near plane, project and bin one triangle */
+    private void addTriangle(Mesh mesh, Face face, int a, int b, int c, int baseColor, Texture texture) {
+        corners[0] = face.vertIndex[a];
+        corners[1] = face.vertIndex[b];
+        corners[2] = face.vertIndex[c];
+        for (int i = 0; i < 3; i++) {
+            if (corners[i] < 0 || corners[i] >= numOfVertices) {
+                return;
+            }
+        }
+        final boolean hasCoords = face.coordIndex != null && mesh.texCoords != null;
+        if (hasCoords) {
+            coords[0] = face.coordIndex[a];
+            coords[1] = face.coordIndex[b];
+            coords[2] = face.coordIndex[c];
+        }
+
+        final int color = shade(baseColor, corners);
+
+        for (int i = 0; i < 3; i++) {
+            System.arraycopy(clip, corners[i] * 4, input, i * 6, 4);
+            final TexCoord coord = hasCoords && coords[i] >= 0 && coords[i] < mesh.texCoords.length
+                    ? mesh.texCoords[coords[i]]
+                    : null;
+            input[i * 6 + 4] = coord == null ? 0 : coord.u;
+            input[i * 6 + 5] = coord == null ? 0 : coord.v;
+        }
+
+        final int n = clipNear(input, polygon);
+        for (int k = 2; k < n; k++) {
+            emitTriangle(polygon, 0, k - 1, k, color, texture);
+        }
+    }
+
+    /** Flat lighting of a triangle from its world space normal */
+    private int shade(int baseColor, int[] corners) {
+        final float ax = world[corners[0] * 3], ay = world[corners[0] * 3 + 1], az = world[corners[0] * 3 + 2];
+        final float e1x = world[corners[1] * 3] - ax, e1y = world[corners[1] * 3 + 1] - ay,
+                e1z = world[corners[1] * 3 + 2] - az;
+        final float e2x = world[corners[2] * 3] - ax, e2y = world[corners[2] * 3 + 1] - ay,
+                e2z = world[corners[2] * 3 + 2] - az;
+        final double nx = e1y * e2z - e1z * e2y, ny = e1z * e2x - e1x * e2z, nz = e1x * e2y - e1y * e2x;
+        final double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        final double light = AMBIENT + DIFFUSE * (length == 0 ? 0 : Math.abs(ny) / length); // two-sided
+
+        final int r = (int) Math.min(255, ((baseColor >> 16) & 0xFF) * light);
+        final int g = (int) Math.min(255, ((baseColor >> 8) & 0xFF) * light);
+        final int bl = (int) Math.min(255, (baseColor & 0xFF) * light);
+        return 0xFF000000 | (r << 16) | (g << 8) | bl;
+    }
+
+    /**
+     * Clip a triangle against the near plane z > -w
+     *
+     * @return the number of vertices of the clipped polygon, 0 to 4
+     */
+    private static int clipNear(float[] in, float[] out) {
+        int n = 0;
+        for (int i = 0; i < 3; i++) {
+            final int cur = i * 6, next = ((i + 1) % 3) * 6;
+            final float dCur = in[cur + 2] + in[cur + 3];
+            final float dNext = in[next + 2] + in[next + 3];
+
+            if (dCur >= 0) {
+                System.arraycopy(in, cur, out, n++ * 6, 6);
+            }
+            if ((dCur >= 0) != (dNext >= 0)) {
+                final float t = dCur / (dCur - dNext);
+                for (int k = 0; k < 6; k++) {
+                    out[n * 6 + k] = in[cur + k] + t * (in[next + k] - in[cur + k]);
+                }
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /** Project a clipped triangle to the screen and bin it */
+    private void emitTriangle(float[] poly, int a, int b, int c, int color, Texture texture) {
+        if (numOfTriangles == triangleColors.length) {
+            triangles = Arrays.copyOf(triangles, triangles.length * 2);
+            triangleColors = Arrays.copyOf(triangleColors, triangleColors.length * 2);
+            triangleTextures = Arrays.copyOf(triangleTextures, triangleTextures.length * 2);
+        }
+
+        final int base = numOfTriangles * TRIANGLE_FLOATS;
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        polygonCorners[0] = a;
+        polygonCorners[1] = b;
+        polygonCorners[2] = c;
+        for (int i = 0; i < 3; i++) {
+            final int v = polygonCorners[i] * 6;
+            final float inverseW = 1 / poly[v + 3];
+            final float x = (poly[v] * inverseW + 1) * 0.5f * width;
+            final float y = (1 - poly[v + 1] * inverseW) * 0.5f * height;
+            final int t = base + i * VERTEX_FLOATS;
+            triangles[t] = x;
+            triangles[t + 1] = y;
+            triangles[t + 2] = poly[v + 2] * inverseW; // depth, -1 to 1
+            triangles[t + 3] = inverseW;
+            triangles[t + 4] = poly[v + 4] * inverseW;
+            triangles[t + 5] = poly[v + 5] * inverseW;
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+        }
+
+        if (maxX < 0 || maxY < 0 || minX >= width || minY >= height) {
+            return; // off screen
+        }
+        triangleColors[numOfTriangles] = color;
+        triangleTextures[numOfTriangles] = texture;
+
+        final int fromTileX = Math.max(0, (int) minX / TILE_SIZE);
+        final int toTileX = Math.min(tilesX - 1, (int) maxX / TILE_SIZE);
+        final int fromTileY = Math.max(0, (int) minY / TILE_SIZE);
+        final int toTileY = Math.min(tilesY - 1, (int) maxY / TILE_SIZE);
+        for (int ty = fromTileY; ty <= toTileY; ty++) {
+            for (int tx = fromTileX; tx <= toTileX; tx++) {
+                final int tile = ty * tilesX + tx;
+                if (binSizes[tile] == bins[tile].length) {
+                    bins[tile] = Arrays.copyOf(bins[tile], binSizes[tile] * 2);
+                }
+                bins[tile][binSizes[tile]++] = numOfTriangles;
+            }
+        }
+        numOfTriangles++;
+    }
+
+    private final ParallelFor.Body rasterizeTiles = new ParallelFor.Body() {
+        public void run(int chunk, int from, int to) {
+            for (int tile = from; tile < to; tile++) {
+                rasterizeTile(tile);
+            }
+        }
+    };
+
+    /** Clear a tile, draw the background and then the binned triangles */
+    private void rasterizeTile(int tile) {
+        final int x0 = (tile % tilesX) * TILE_SIZE, y0 = (tile / tilesX) * TILE_SIZE;
+        final int x1 = Math.min(width, x0 + TILE_SIZE), y1 = Math.min(height, y0 + TILE_SIZE);
+
+        final Texture background = isBackgroundDrawn ? textures.get(backgroundPath) : null;
+        for (int y = y0; y < y1; y++) {
+            final int row = y * width;
+            Arrays.fill(depth, row + x0, row + x1, 1);
+            if (background == null) {
+                Arrays.fill(pixels, row + x0, row + x1, CLEAR_COLOR);
+            } else {
+                final int backgroundRow = (int) ((long) y * background.height / height) * background.width;
+                for (int x = x0; x < x1; x++) {
+                    pixels[row + x] = background.pixels[backgroundRow + (int) ((long) x * background.width / width)];
+                }
+            }
+        }
+
+        for (int i = 0; i < binSizes[tile]; i++) {
+            rasterizeTriangle(bins[tile][i], x0, y0, x1, y1);
+        }
+    }
+
+    /** Draw the part of a triangle inside a tile, at pixel centers */
+    private void rasterizeTriangle(int index, int tileX0, int tileY0, int tileX1, int tileY1) {
+        final float[] t = triangles;
+        final int b = index * TRIANGLE_FLOATS;
+        final float ax = t[b], ay = t[b + 1];
+        final float bx = t[b + VERTEX_FLOATS], by = t[b + VERTEX_FLOATS + 1];
+        final float cx = t[b + 2 * VERTEX_FLOATS], cy = t[b + 2 * VERTEX_FLOATS + 1];
+
+        final float area = (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+        if (area == 0) {
+            return;
+        }
+        final float inverseArea = 1 / area;
+
+        final int minX = Math.max(tileX0, (int) Math.floor(Math.min(ax, Math.min(bx, cx))));
+        final int maxX = Math.min(tileX1 - 1, (int) Math.ceil(Math.max(ax, Math.max(bx, cx))));
+        final int minY = Math.max(tileY0, (int) Math.floor(Math.min(ay, Math.min(by, cy))));
+        final int maxY = Math.min(tileY1 - 1, (int) Math.ceil(Math.max(ay, Math.max(by, cy))));
+
+        final int color = triangleColors[index];
+        final Texture texture = triangleTextures[index];
+
+        for (int y = minY; y <= maxY; y++) {
+            final float py = y + 0.5f;
+            for (int x = minX; x <= maxX; x++) {
+                final float px = x + 0.5f;
+
+                // Barycentric weights, positive inside for either winding
+                final float wa = ((bx - px) * (cy - py) - (by - py) * (cx - px)) * inverseArea;
+                final float wb = ((cx - px) * (ay - py) - (cy - py) * (ax - px)) * inverseArea;
+                final float wc = 1 - wa - wb;
+                if (wa < 0 || wb < 0 || wc < 0) {
+                    continue;
+                }
+
+                final float z = wa * t[b + 2] + wb * t[b + VERTEX_FLOATS + 2] + wc * t[b + 2 * VERTEX_FLOATS + 2];
+                final int pixel = y * width + x;
+                if (z > depth[pixel] || z < -1) {
+                    continue;
+                }
+                depth[pixel] = z;
+
+                if (texture == null) {
+                    pixels[pixel] = color;
+                } else {
+                    final float inverseW = wa * t[b + 3] + wb * t[b + VERTEX_FLOATS + 3]
+                            + wc * t[b + 2 * VERTEX_FLOATS + 3];
+                    final float u = (wa * t[b + 4] + wb * t[b + VERTEX_FLOATS + 4]
+                            + wc * t[b + 2 * VERTEX_FLOATS + 4]) / inverseW;
+                    final float v = (wa * t[b + 5] + wb * t[b + VERTEX_FLOATS + 5]
+                            + wc * t[b + 2 * VERTEX_FLOATS + 5]) / inverseW;
+                    pixels[pixel] = modulate(texture.sample(u, v), color);
+                }
+            }
+        }
+    }
+
+    /** Multiply a texel by the lit color */
+    private static int modulate(int texel, int color) {
+        final int r = (((texel >> 16) & 0xFF) * ((color >> 16) & 0xFF)) / 255;
+        final int g = (((texel >> 8) & 0xFF) * ((color >> 8) & 0xFF)) / 255;
+        final int b = ((texel & 0xFF) * (color & 0xFF)) / 255;
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    private void drawTexts() {
+        if (texts.isEmpty()) {
+            return;
+        }
+
+        final Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setFont(TEXT_FONT);
+        g.setColor(Color.WHITE);
+        for (int i = 0; i < texts.size(); i++) {
+            g.drawString(texts.get(i), textPositions.get(i).x, textPositions.get(i).y);
+        }
+        g.dispose();
+    }
+
+    /**
+     * The unitizing transform and material textures of a model, computed on
+     * first use
+     */
+    private ModelData getModelData(Model model) {
+        ModelData data = modelData.get(model);
+        if (data == null) {
+            data = new ModelData(model);
+            modelData.put(model, data);
+        }
+        return data;
+    }
+
+    private class ModelData {
+        // Centers the model and scales it into [-1, 1], as the models are
+        // loaded with setUnitizeSize(true)
+        final double[] unitize = new double[16];
+        final Texture[] textures;
+
+        ModelData(Model model) {
+            float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+            float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+            textures = new Texture[model.getNumberOfMeshes()];
+
+            for (int m = 0; m < model.getNumberOfMeshes(); m++) {
+                final Mesh mesh = model.getMesh(m);
+                for (int i = 0; mesh.vertices != null && i < mesh.numOfVerts && i < mesh.vertices.length; i++) {
+                    final Vec4 v = mesh.vertices[i];
+                    minX = Math.min(minX, v.x);
+                    minY = Math.min(minY, v.y);
+                    minZ = Math.min(minZ, v.z);
+                    maxX = Math.max(maxX, v.x);
+                    maxY = Math.max(maxY, v.y);
+                    maxZ = Math.max(maxZ, v.z);
+                }
+
+                if (mesh.materialID >= 0 && mesh.materialID < model.getNumberOfMaterials()) {
+                    final String file = model.getMaterial(mesh.materialID).strFile;
+                    if (file != null && model.getSource() != null) {
+                        final File path = new File(new File(model.getSource()).getParentFile(), file);
+                        textures[m] = loadTexture(path.getPath());
+                    }
+                }
+            }
+
+            final double halfSize = Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ)) / 2;
+            final double scale = halfSize > 0 ? 1 / halfSize : 1;
+            unitize[0] = unitize[5] = unitize[10] = scale;
+            unitize[12] = -(minX + maxX) / 2 * scale;
+            unitize[13] = -(minY + maxY) / 2 * scale;
+            unitize[14] = -(minZ + maxZ) / 2 * scale;
+            unitize[15] = 1;
+        }
+    }
+
+    /**
+     * @return the image at path, or null if it cannot be read
+     */
+    private synchronized Texture loadTexture(String path) {
+        if (textures.containsKey(path)) {
+            return textures.get(path);
+        }
+
+        Texture texture = null;
+        try {
+            final BufferedImage image = ImageIO.read(new File(path));
+            if (image != null) {
+                texture = new Texture(image);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        textures.put(path, texture);
+        return texture;
+    }
+
+    /** An image in ARGB, sampled nearest and repeating */
+    private static class Texture {
+        final int width;
+        final int height;
+        final int[] pixels;
+
+        Texture(BufferedImage image) {
+            width = image.getWidth();
+            height = image.getHeight();
+            pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        }
+
+        /** v is 0 at the bottom of the image, as in OpenGL */
+        int sample(float u, float v) {
+            int x = (int) Math.floor(u * width) % width;
+            int y = (int) Math.floor((1 - v) * height) % height;
+            if (x < 0) {
+                x += width;
+            }
+            if (y < 0) {
+                y += height;
+            }
+            return pixels[y * width + x];
+        }
+    }
+
+    /** dest = a * b, column-major. dest may be a or b */
+    private static void multiply(double[] a, double[] b, double[] dest) {
+        double c0, c1, c2, c3;
+        final double[] result = dest == a || dest == b ? new double[16] : dest;
+        for (int column = 0; column < 4; column++) {
+            c0 = b[column * 4];
+            c1 = b[column * 4 + 1];
+            c2 = b[column * 4 + 2];
+            c3 = b[column * 4 + 3];
+            for (int row = 0; row < 4; row++) {
+                result[column * 4 + row] = a[row] * c0 + a[4 + row] * c1 + a[8 + row] * c2 + a[12 + row] * c3;
+            }
+        }
+        if (result != dest) {
+            System.arraycopy(result, 0, dest, 0, 16);
+        }
+    }
+
+    /** The matrix of gluLookAt */
+    private static void lookAt(Vector eye, Vector center, Vector up, double[] dest) {
+        final Vector f = center.subtract(eye).normalize();
+        final Vector s = f.cross(up).normalize();
+        final Vector u = s.cross(f);
+
+        Arrays.fill(dest, 0);
+        dest[0] = s.x();
+        dest[4] = s.y();
+        dest[8] = s.z();
+        dest[1] = u.x();
+        dest[5] = u.y();
+        dest[9] = u.z();
+        dest[2] = -f.x();
+        dest[6] = -f.y();
+        dest[10] = -f.z();
+        dest[12] = -(s.x() * eye.x() + s.y() * eye.y() + s.z() * eye.z());
+        dest[13] = -(u.x() * eye.x() + u.y() * eye.y() + u.z() * eye.z());
+        dest[14] = f.x() * eye.x() + f.y() * eye.y() + f.z() * eye.z();
+        dest[15] = 1;
+    }
+
+    /** The matrix of gluPerspective */
+    private static void perspective(double fovY, double aspect, double near, double far, double[] dest) {
+        final double f = 1 / Math.tan(Math.toRadians(fovY) / 2);
+        Arrays.fill(dest, 0);
+        dest[0] = f / aspect;
+        dest[5] = f;
+        dest[10] = (far + near) / (near - far);
+        dest[11] = -1;
+        dest[14] = 2 * far * near / (near - far);
+    }
+}
@@ -0,0 +1,220 @@
+package core;
+
+import com.sun.opengl.util.texture.Texture;
+import com.sun.opengl.util.texture.TextureData;
+import com.sun.opengl.util.texture.TextureIO;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Textures by file path, shared and reference counted.
+ * <br />
+ * Image files are read and decoded on a background thread. The GL thread
+ * uploads decoded images in update(), once per frame, so loading a texture
+ * never stalls a frame on the disk. Textures nobody references stay on the GPU
+ * for reuse until the GPU memory budget is exceeded, and are then disposed
+ * least recently used first.
+ * <br />
+ * acquire(), release() and preload() may be called from any thread. get() and
+ * update() must be called on the GL thread.
+ */
+public class TextureCache {
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true); // LRU order
+    private final ExecutorService decoder = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "texture-decode");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private long budgetBytes;
+    private long residentBytes;
+    private int numPending; // entries still decoding
+    private final List<Entry> uploads = new ArrayList<Entry>(); // used by update() only
+
+    /**
+     * @param budgetBytes GPU memory for textures, above which unreferenced
+     *                    textures are disposed
+     */
+    public TextureCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    public synchronized void setBudget(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /** Estimated GPU memory of the uploaded textures */
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * Reference a texture, starting to load it if it isn't loaded. Every
+     * acquire() should be matched by a release()
+     */
+    public synchronized void acquire(String path) {
+        entryOf(path).refCount++;
+    }
+
+    /**
+     * Drop a reference. The texture stays cached until it is evicted
+     */
+    public synchronized void release(String path) {
+        final Entry entry = entries.get(path);
+        if (entry != null && entry.refCount > 0) {
+            entry.refCount--;
+        }
+    }
+
+    /**
+     * Load a texture and keep it for the lifetime of the cache, so that it is
+     * ready when first needed
+     */
+    public void preload(String path) {
+        acquire(path);
+    }
+
+    /**
+     * @return the texture, or null if it is still loading or failed to load
+     */
+    public synchronized Texture get(String path) {
+        final Entry entry = entries.get(path);
+        return entry == null ? null : entry.texture;
+    }
+
+    /**
+     * Whether the texture could not be read or decoded. It stays without a
+     * texture, and is not tried again
+     */
+    public synchronized boolean isFailed(String path) {
+        final Entry entry = entries.get(path);
+        return entry != null && entry.isFailed;
+    }
+
+    /**
+     * Upload the textures that finished decoding and evict over the budget.
+     * Called once per frame on the GL thread
+     */
+    public void update() {
+        takeDecoded(uploads);
+        for (int i = 0; i < uploads.size(); i++) {
+            final Entry entry = uploads.get(i);
+            TextureData data = null;
+            try {
+                data = entry.decoded.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+            }
+
+            final Texture texture = data == null ? null : TextureIO.newTexture(data);
+            if (data != null) {
+                data.flush();
+            }
+
+            synchronized (this) {
+                entry.decoded = null;
+                entry.texture = texture;
+                entry.isFailed = texture == null;
+                if (texture != null) {
+                    entry.sizeBytes = texture.getEstimatedMemorySize();
+                    residentBytes += entry.sizeBytes;
+                }
+            }
+        }
+        uploads.clear();
+
+        evict();
+    }
+
+    /** Stop the decoding thread and dispose all textures, on the GL thread */
+    public synchronized void dispose() {
+        decoder.shutdownNow();
+        for (Entry entry : entries.values()) {
+            if (entry.texture != null) {
+                entry.texture.dispose();
+            }
+        }
+        entries.clear();
+        residentBytes = 0;
+        numPending = 0;
+    }
+
+    private Entry entryOf(final String path) {
+        Entry entry = entries.get(path);
+        if (entry == null) {
+            entry = new Entry();
+            entry.pending = decoder.submit(new Callable<TextureData>() {
+                public TextureData call() throws Exception {
+                    return TextureIO.newTextureData(new File(path), true, null);
+                }
+            });
+            entries.put(path, entry);
+            numPending++;
+        }
+        return entry;
+    }
+
+    /**
+     * Add the entries whose image is decoded and not uploaded to decoded, and
+     * mark them as being uploaded. Looks at no entry if none is decoding
+     */
+    private synchronized void takeDecoded(List<Entry> decoded) {
+        if (numPending == 0) {
+            return;
+        }
+
+        for (Entry entry : entries.values()) {
+            if (entry.pending != null && entry.pending.isDone()) {
+                entry.decoded = entry.pending;
+                entry.pending = null;
+                numPending--;
+                decoded.add(entry);
+            }
+        }
+    }
+
+    /**
+     * Dispose unreferenced textures, least recently used first, to fit the
+     * budget. Called after the uploads, so no entry is being uploaded
+     */
+    private synchronized void evict() {
+        if (residentBytes <= budgetBytes) {
+            return;
+        }
+
+        final Iterator<Entry> it = entries.values().iterator();
+        while (residentBytes > budgetBytes && it.hasNext()) {
+            final Entry entry = it.next();
+            if (entry.refCount == 0 && entry.pending == null) {
+                if (entry.texture != null) {
+                    entry.texture.dispose();
+                    residentBytes -= entry.sizeBytes;
+                }
+                it.remove();
+            }
+        }
+    }
+
+    private static class Entry {
+        int refCount;
+        Future<TextureData> pending; // decoding, null once decoded
+        Future<TextureData> decoded; // decoded, being uploaded
+        Texture texture;
+        boolean isFailed; // decoded without an image
+        long sizeBytes;
+    }
+}
@@ -63,6 +63,19 @@ public class Vector {
         setValue(Axis.Z, value);
     }
 
+    // Sets all components of this vector, returns this vector
+    public Vector set(double x, double y, double z) {
+        this.data[0] = x;
+        this.data[1] = y;
+        this.data[2] = z;
+        return this;
+    }
+
+    // Copies the components of other vector into this vector, returns this vector
+    public Vector set(Vector other) {
+        return set(other.x(), other.y(), other.z());
+    }
+
     public String toString() {
         return String.format("(%f, %f, %f)", x(), y(), z());
     }
@@ -140,6 +153,87 @@ public class Vector {
         return angle;
     }
 
+    /*
+     * In-place and destination-taking variants. These do not allocate, and are
+     * used on the physics path. The destination may be this vector or other.
+     */
+
+    // this vector += other vector
+    public Vector addInPlace(Vector other) {
+        return addInto(other, this);
+    }
+
+    // this vector += other vector * scalar
+    public Vector addScaledInPlace(Vector other, double scalar) {
+        return set(x() + other.x() * scalar, y() + other.y() * scalar, z() + other.z() * scalar);
+    }
+
+    // this vector -= other vector
+    public Vector subtractInPlace(Vector other) {
+        return subtractInto(other, this);
+    }
+
+    // this vector *= scalar
+    public Vector scaleInPlace(double scalar) {
+        return mulInto(scalar, this);
+    }
+
+    // this vector /= scalar
+    public Vector divInPlace(double scalar) {
+        return divInto(scalar, this);
+    }
+
+    // Normalize this vector in place
+    public Vector normalizeInPlace() {
+        return normalizeInto(this);
+    }
+
+    // dest = this vector + other vector, returns dest
+    public Vector addInto(Vector other, Vector dest) {
+        return dest.set(x() + other.x(), y() + other.y(), z() + other.z());
+    }
+
+    // dest = this vector - other vector, returns dest
+    public Vector subtractInto(Vector other, Vector dest) {
+        return dest.set(x() - other.x(), y() - other.y(), z() - other.z());
+    }
+
+    // dest = this vector * scalar, returns dest
+    public Vector mulInto(double scalar, Vector dest) {
+        return dest.set(x() * scalar, y() * scalar, z() * scalar);
+    }
+
+    // dest = this vector * scalars (per axis), returns dest
+    public Vector mulInto(Vector scalars, Vector dest) {
+        return dest.set(x() * scalars.x(), y() * scalars.y(), z() * scalars.z());
+    }
+
+    // dest = this vector / scalar, returns dest
+    public Vector divInto(double scalar, Vector dest) {
+        if (scalar == 0) {
+            throw new IllegalArgumentException("Argument 'scalar' is 0");
+        }
+        return dest.set(x() / scalar, y() / scalar, z() / scalar);
+    }
+
+    // dest = this vector x other vector, returns dest
+    public Vector crossInto(Vector other, Vector dest) {
+        return dest.set(
+                (y() * other.z()) - (z() * other.y()),
+                (z() * other.x()) - (x() * other.z()),
+                (x() * other.y()) - (y() * other.x()));
+    }
+
+    // dest = normalized this vector (or zero), returns dest
+    public Vector normalizeInto(Vector dest) {
+        final double size = this.size();
+        if (size == 0) {
+            return dest.set(0, 0, 0);
+        }
+
+        return divInto(size, dest);
+    }
+
     private static double sqr(double value) {
         return value * value;
     }
@@ -0,0 +1,53 @@
+package core;
+
+/**
+ * Pool of scratch vectors for temporaries that live for a single physics step.
+ * Vectors are handed out by acquire() and all of them are reclaimed by reset(),
+ * so a steady-state step does not allocate.
+ * 
+ * @see Vector
+ */
+public class VectorPool {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Vector[] vectors = new Vector[0];
+    private int used;
+
+    public VectorPool() {
+        grow(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @return a scratch vector, valid until the next reset(). Contents are
+     *         undefined.
+     */
+    public Vector acquire() {
+        if (used == vectors.length) {
+            grow(vectors.length * 2);
+        }
+        return vectors[used++];
+    }
+
+    /**
+     * @return a scratch vector set to (x, y, z)
+     */
+    public Vector acquire(double x, double y, double z) {
+        return acquire().set(x, y, z);
+    }
+
+    /**
+     * Reclaim every vector handed out since the last reset
+     */
+    public void reset() {
+        used = 0;
+    }
+
+    private void grow(int capacity) {
+        final Vector[] newVectors = new Vector[capacity];
+        System.arraycopy(vectors, 0, newVectors, 0, vectors.length);
+        for (int i = vectors.length; i < capacity; i++) {
+            newVectors[i] = new Vector();
+        }
+        vectors = newVectors;
+    }
+}
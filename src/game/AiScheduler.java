@@ -0,0 +1,165 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the decisions of the AI controllers of a World on worker threads,
+ * instead of inside the physics step.
+ * <br />
+ * Every physics step is a tick. Each controller decides at most
+ * decisionsPerSecond times a second, and the controllers are split into groups
+ * that decide in turn, so the work is spread evenly over the ticks. A tick's
+ * decisions run on the workers against an AiView of the world, while the
+ * physics goes on, and are applied as commands at the start of the first step
+ * after they are all done.
+ * <br />
+ * A tick has a time budget: decisions not started within it are carried over
+ * to the next tick, first. The physics never waits for the workers; while they
+ * are busy, ticks are skipped. Decisions so depend on timing: for steps that
+ * are the same in every run, decide inline instead.
+ *
+ * @see World#setAiScheduler(AiScheduler)
+ */
+public class AiScheduler {
+    private final World world;
+    private final List<OpponentPlayerController> controllers = new ArrayList<OpponentPlayerController>();
+    private final int periodSteps; // steps between two decisions of a controller
+    private final long budgetNanos;
+    private final int numOfThreads;
+    private final ExecutorService workers;
+    private final AiView view = new AiView();
+
+    // Controllers to decide, by index. [0, taken) were decided in the last
+    // tick, the rest are carried over
+    private final int[] queue;
+    private final boolean[] isQueued;
+    private int queued;
+    private long tick;
+    private long skippedTicks;
+
+    // Shared with the workers for one tick
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger busyWorkers = new AtomicInteger();
+    private volatile long deadline;
+
+    /**
+     * @param world              its AI controllers are scheduled, when it is
+     *                           given this scheduler
+     * @param decisionsPerSecond how often each controller decides
+     * @param budgetMillis       time for the decisions of a tick
+     * @param numOfThreads       number of worker threads
+     */
+    public AiScheduler(World world, double decisionsPerSecond, double budgetMillis, int numOfThreads) {
+        this.world = world;
+        for (PlayerController controller : world.getPlayers()) {
+            if (controller instanceof OpponentPlayerController) {
+                controllers.add((OpponentPlayerController) controller);
+            }
+        }
+
+        this.periodSteps = Math.max(1, (int) Math.round(1 / (decisionsPerSecond * World.PHYSICS_STEP_SECS)));
+        this.budgetNanos = (long) (budgetMillis * 1e6);
+        this.numOfThreads = numOfThreads;
+        this.queue = new int[controllers.size()];
+        this.isQueued = new boolean[controllers.size()];
+        this.workers = Executors.newFixedThreadPool(numOfThreads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "ai-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /** Number of ticks skipped because the workers were still busy */
+    public long getSkippedTicks() {
+        return skippedTicks;
+    }
+
+    /** Stop the worker threads */
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    /**
+     * Apply the decisions of the last tick, if done, and start the next one.
+     * Called by World.step() on the simulation thread, before the forces
+     */
+    void tick() {
+        if (busyWorkers.get() > 0) {
+            skippedTicks++;
+            return;
+        }
+
+        // Apply what was decided, and carry the rest over to the front
+        final int taken = Math.min(next.get(), queued);
+        for (int i = 0; i < taken; i++) {
+            isQueued[queue[i]] = false;
+            controllers.get(queue[i]).applyDecision();
+        }
+        System.arraycopy(queue, taken, queue, 0, queued - taken);
+        queued -= taken;
+        next.set(0);
+
+        // The group due this tick
+        for (int i = (int) (tick++ % periodSteps); i < controllers.size(); i += periodSteps) {
+            if (!isQueued[i]) {
+                isQueued[i] = true;
+                queue[queued++] = i;
+            }
+        }
+        if (queued == 0) {
+            return;
+        }
+
+        world.writeAiView(view);
+        deadline = System.nanoTime() + budgetNanos;
+        final int threads = Math.min(numOfThreads, queued);
+        busyWorkers.set(threads);
+        for (int i = 0; i < threads; i++) {
+            workers.execute(worker);
+        }
+    }
+
+    /**
+     * Wait for the current tick, and forget its decisions and the carried
+     * over ones. Called by World.reset() on the simulation thread
+     */
+    void reset() {
+        while (busyWorkers.get() > 0) {
+            Thread.yield(); // no longer than the budget and one decision
+        }
+        for (int i = 0; i < queued; i++) {
+            isQueued[queue[i]] = false;
+        }
+        queued = 0;
+        next.set(0);
+        tick = 0;
+    }
+
+    /** Decides queued controllers until none are left or the budget is spent */
+    private final Runnable worker = new Runnable() {
+        public void run() {
+            try {
+                while (System.nanoTime() - deadline < 0) {
+                    final int i = next.getAndIncrement();
+                    if (i >= queued) {
+                        break;
+                    }
+                    controllers.get(queue[i]).decide(view);
+                }
+            } catch (RuntimeException e) {
+                e.printStackTrace(); // keep scheduling
+            } finally {
+                busyWorkers.decrementAndGet();
+            }
+        }
+    };
+}
@@ -0,0 +1,98 @@
+package game;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * What the AI sees of a World after a step: where each player is, and which
+ * players are still on the surface.
+ * <br />
+ * Written by the simulation thread with World.writeAiView() and then only
+ * read, by the controllers' decisions, until it is written again. Decisions
+ * can so run on other threads while the world steps on.
+ *
+ * @see AiScheduler
+ */
+public class AiView {
+    // By player id
+    private double[] positions = new double[8 * 3];
+    private double[] radius = new double[8];
+
+    // The players on the surface, copied from the world's index
+    private final AlivePlayerIndex alive = new AlivePlayerIndex();
+    private long nanos; // simulated time of the step
+
+    // The complete state, for rollouts. Written only if a world has rollout players
+    private final WorldState state = new WorldState();
+
+    public boolean isOnSurface(int id) {
+        return alive.contains(id);
+    }
+
+    public double getX(int id) {
+        return positions[id * 3];
+    }
+
+    public double getY(int id) {
+        return positions[id * 3 + 1];
+    }
+
+    public double getZ(int id) {
+        return positions[id * 3 + 2];
+    }
+
+    public double getRadius(int id) {
+        return radius[id];
+    }
+
+    /** Simulated time of the step, on the world's clock */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * The complete state of the world after the step, if it has rollout
+     * players. Read only
+     */
+    public WorldState getState() {
+        return state;
+    }
+
+    /** Number of players on the surface */
+    public int size() {
+        return alive.size();
+    }
+
+    /**
+     * A random player on the surface, other than excludeId
+     *
+     * @return its id, or -1 if there is none
+     * @see AlivePlayerIndex#randomOther(Random, int)
+     */
+    public int randomOther(Random random, int excludeId) {
+        return alive.randomOther(random, excludeId);
+    }
+
+    void setNanos(long nanos) {
+        this.nanos = nanos;
+    }
+
+    /** Set the players on the surface after the step */
+    void setAlivePlayers(AlivePlayerIndex alivePlayers) {
+        alive.copyFrom(alivePlayers);
+    }
+
+    /** Set a player's position after the step */
+    void setPlayer(int id, double x, double y, double z, double radius) {
+        if (id >= this.radius.length) {
+            final int length = Math.max(id + 1, this.radius.length * 2);
+            positions = Arrays.copyOf(positions, length * 3);
+            this.radius = Arrays.copyOf(this.radius, length);
+        }
+
+        positions[id * 3] = x;
+        positions[id * 3 + 1] = y;
+        positions[id * 3 + 2] = z;
+        this.radius[id] = radius;
+    }
+}
@@ -0,0 +1,133 @@
+package game;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The players of a World by id, and which of them are still on the surface.
+ * <br />
+ * Players are looked up by id in constant time. The players on the surface are
+ * kept in a dense set, changed only when one falls or on reset, for the AI to
+ * pick a random target without scanning or allocating.
+ * <br />
+ * World changes the index only between the parallel phases of a step, the
+ * queries only read it and are safe from several threads.
+ */
+public class AlivePlayerIndex {
+    private PlayerController[] byId = new PlayerController[16];
+    private int numOfPlayers;
+
+    // Ids of the players on the surface, in no order, and where each id is
+    private int[] alive = new int[16];
+    private int[] slotOfId = new int[16]; // -1 if fallen or no such player
+    private int count;
+
+    public AlivePlayerIndex() {
+        Arrays.fill(slotOfId, -1);
+    }
+
+    /** The player with this id, on the surface or not, or null */
+    public PlayerController get(int id) {
+        return id >= 0 && id < byId.length ? byId[id] : null;
+    }
+
+    /** Number of players on the surface */
+    public int size() {
+        return count;
+    }
+
+    /** Id of the i-th player on the surface, 0 <= i < size(), in no order */
+    public int getId(int i) {
+        return alive[i];
+    }
+
+    /** Whether the player with this id is on the surface */
+    public boolean contains(int id) {
+        return id >= 0 && id < slotOfId.length && slotOfId[id] >= 0;
+    }
+
+    /**
+     * A random player on the surface, other than excludeId
+     *
+     * @param excludeId id of a player not to pick, e.g. the one asking, or -1
+     * @return its id, or -1 if there is none
+     */
+    public int randomOther(Random random, int excludeId) {
+        final int excluded = contains(excludeId) ? slotOfId[excludeId] : -1;
+        final int choices = excluded < 0 ? count : count - 1;
+        if (choices <= 0) {
+            return -1;
+        }
+
+        int slot = random.nextInt(choices);
+        if (excluded >= 0 && slot >= excluded) {
+            slot++; // skip over the excluded slot
+        }
+        return alive[slot];
+    }
+
+    /** Add a new player, on the surface. Ids must be unique and not negative */
+    void add(PlayerController player) {
+        final int id = player.getId();
+        if (id >= byId.length) {
+            final int oldLength = byId.length;
+            final int length = Math.max(id + 1, oldLength * 2);
+            byId = Arrays.copyOf(byId, length);
+            slotOfId = Arrays.copyOf(slotOfId, length);
+            Arrays.fill(slotOfId, oldLength, length, -1);
+        }
+        if (numOfPlayers == alive.length) {
+            alive = Arrays.copyOf(alive, numOfPlayers * 2);
+        }
+
+        byId[id] = player;
+        numOfPlayers++;
+        slotOfId[id] = count;
+        alive[count++] = id;
+    }
+
+    /**
+     * Copy which players of another index are on the surface, in the same
+     * order, e.g. for the AI to read on other threads. Players are not
+     * copied, get() of the copy returns null
+     */
+    void copyFrom(AlivePlayerIndex other) {
+        if (slotOfId.length < other.slotOfId.length) {
+            slotOfId = new int[other.slotOfId.length];
+        }
+        if (alive.length < other.count) {
+            alive = new int[other.alive.length];
+        }
+        Arrays.fill(slotOfId, -1);
+        System.arraycopy(other.slotOfId, 0, slotOfId, 0, other.slotOfId.length);
+        System.arraycopy(other.alive, 0, alive, 0, other.count);
+        count = other.count;
+    }
+
+    /** Find again which players are on the surface, e.g. after a reset */
+    void rebuild() {
+        count = 0;
+        for (int id = 0; id < byId.length; id++) {
+            slotOfId[id] = -1;
+            if (byId[id] != null && byId[id].getPlayer().isOnSurface()) {
+                slotOfId[id] = count;
+                alive[count++] = id;
+            }
+        }
+    }
+
+    /**
+     * Remove a player that fell, moving the last one on the surface into its
+     * slot. Called after the surface checks of the step it fell in
+     */
+    void remove(int id) {
+        if (!contains(id)) {
+            return;
+        }
+        final int slot = slotOfId[id];
+        final int last = alive[--count];
+        alive[slot] = last;
+        slotOfId[last] = slot;
+        slotOfId[id] = -1;
+    }
+}
@@ -0,0 +1,165 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import util.Timer;
+
+/**
+ * Runs many independent headless rounds of a Scenario at once, for AI tuning and
+ * balance analysis, and aggregates the results.
+ * <br />
+ * The rounds are CPU bound and share nothing, so a bounded pool with one worker
+ * per core pulls rounds until all are done. Each worker keeps its own results,
+ * which are merged at the end, so throughput scales with the cores.
+ * 
+ * @see Scenario
+ */
+public class BatchSimulator {
+    private final int numOfThreads;
+
+    /** Use one thread per available core */
+    public BatchSimulator() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchSimulator(int numOfThreads) {
+        this.numOfThreads = numOfThreads;
+    }
+
+    /**
+     * Run the given number of rounds and wait for them
+     */
+    public Results run(final Scenario scenario, final int rounds) throws InterruptedException {
+        final ExecutorService executor = Executors.newFixedThreadPool(numOfThreads);
+        final AtomicInteger nextRound = new AtomicInteger();
+        final Timer timer = new Timer();
+
+        final List<Future<Results>> futures = new ArrayList<Future<Results>>();
+        for (int i = 0; i < numOfThreads; i++) {
+            futures.add(executor.submit(new Callable<Results>() {
+                public Results call() {
+                    final Results results = new Results(scenario.getNumOfPlayers());
+                    int round;
+                    while ((round = nextRound.getAndIncrement()) < rounds) {
+                        results.add(scenario.runRound(round));
+                    }
+                    return results;
+                }
+            }));
+        }
+
+        final Results total = new Results(scenario.getNumOfPlayers());
+        try {
+            for (Future<Results> future : futures) {
+                total.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Round failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        total.wallSeconds = timer.elapsedSeconds();
+        return total;
+    }
+
+    /** Aggregated results of a batch */
+    public static class Results {
+        private final int[] wins; // wins[0] counts rounds without a winner
+        private int rounds;
+        private long steps;
+        private double totalRoundSecs;
+        private double minRoundSecs = Double.MAX_VALUE;
+        private double maxRoundSecs;
+        private double wallSeconds;
+
+        Results(int numOfPlayers) {
+            wins = new int[numOfPlayers + 1];
+        }
+
+        void add(Scenario.RoundResult round) {
+            wins[Math.max(round.getWinner(), 0)]++;
+            rounds++;
+            steps += round.getSteps();
+            totalRoundSecs += round.getSeconds();
+            minRoundSecs = Math.min(minRoundSecs, round.getSeconds());
+            maxRoundSecs = Math.max(maxRoundSecs, round.getSeconds());
+        }
+
+        void add(Results other) {
+            for (int i = 0; i < wins.length; i++) {
+                wins[i] += other.wins[i];
+            }
+            rounds += other.rounds;
+            steps += other.steps;
+            totalRoundSecs += other.totalRoundSecs;
+            minRoundSecs = Math.min(minRoundSecs, other.minRoundSecs);
+            maxRoundSecs = Math.max(maxRoundSecs, other.maxRoundSecs);
+        }
+
+        public int getRounds() {
+            return rounds;
+        }
+
+        /** Number of rounds won by a player id */
+        public int getWins(int id) {
+            return wins[id];
+        }
+
+        /** Number of rounds nobody won */
+        public int getRoundsWithoutWinner() {
+            return wins[0];
+        }
+
+        /** Average simulated round duration */
+        public double getAverageRoundSecs() {
+            return rounds == 0 ? 0 : totalRoundSecs / rounds;
+        }
+
+        public double getMinRoundSecs() {
+            return rounds == 0 ? 0 : minRoundSecs;
+        }
+
+        public double getMaxRoundSecs() {
+            return maxRoundSecs;
+        }
+
+        public long getSteps() {
+            return steps;
+        }
+
+        /** Physics steps per wall-clock second, over all threads */
+        public double getStepsPerSecond() {
+            return steps / wallSeconds;
+        }
+
+        public double getRoundsPerSecond() {
+            return rounds / wallSeconds;
+        }
+
+        public double getWallSeconds() {
+            return wallSeconds;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder s = new StringBuilder();
+            s.append(String.format("%d rounds in %.2f s: %.1f rounds/s, %.0f steps/s%n",
+                    rounds, wallSeconds, getRoundsPerSecond(), getStepsPerSecond()));
+            s.append(String.format("round duration: avg %.2f s, min %.2f s, max %.2f s%n",
+                    getAverageRoundSecs(), getMinRoundSecs(), getMaxRoundSecs()));
+            for (int id = 1; id < wins.length; id++) {
+                s.append(String.format("player %d: %d wins%n", id, wins[id]));
+            }
+            s.append(String.format("no winner: %d", wins[0]));
+            return s.toString();
+        }
+    }
+}
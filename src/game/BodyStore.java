@@ -0,0 +1,190 @@
+package game;
+
+import core.Vector;
+
+/**
+ * Keeps the physics state of all bodies (mass, radius, position, velocity,
+ * force) in parallel primitive arrays indexed by body id.
+ * Players are views over this store, and PhysicsEngine integrates all bodies
+ * in one tight loop over the arrays.
+ * 
+ * @see Player
+ * @see PhysicsEngine
+ */
+public class BodyStore {
+    private static final int INITIAL_CAPACITY = 32;
+
+    private int size;
+
+    // Read directly by the integration kernels. Replaced when the store grows.
+    double[] mass;
+    double[] radius;
+    double[] positionX, positionY, positionZ;
+    double[] velocityX, velocityY, velocityZ;
+    double[] forceX, forceY, forceZ;
+    double[] previousX, previousY, previousZ; // positions before the last step
+
+    public BodyStore() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Add a body at the origin, with no velocity and no force
+     * 
+     * @return the new body id
+     */
+    public int add(double mass, double radius) {
+        if (size == this.mass.length) {
+            allocate(size * 2);
+        }
+
+        final int id = size++;
+        this.mass[id] = mass;
+        this.radius[id] = radius;
+        return id;
+    }
+
+    /** Number of bodies in the store */
+    public int size() {
+        return size;
+    }
+
+    public double getMass(int id) {
+        return mass[id];
+    }
+
+    public double getRadius(int id) {
+        return radius[id];
+    }
+
+    public double getPositionX(int id) {
+        return positionX[id];
+    }
+
+    public double getPositionY(int id) {
+        return positionY[id];
+    }
+
+    public double getPositionZ(int id) {
+        return positionZ[id];
+    }
+
+    /** Copy the position of a body into dest, returns dest */
+    public Vector getPosition(int id, Vector dest) {
+        return dest.set(positionX[id], positionY[id], positionZ[id]);
+    }
+
+    /** Copy the velocity of a body into dest, returns dest */
+    public Vector getVelocity(int id, Vector dest) {
+        return dest.set(velocityX[id], velocityY[id], velocityZ[id]);
+    }
+
+    /** Copy the force of a body into dest, returns dest */
+    public Vector getForce(int id, Vector dest) {
+        return dest.set(forceX[id], forceY[id], forceZ[id]);
+    }
+
+    /**
+     * Move a body inside a physics step (e.g. a collision). The render position
+     * still interpolates from the previous step.
+     */
+    public void setPosition(int id, double x, double y, double z) {
+        positionX[id] = x;
+        positionY[id] = y;
+        positionZ[id] = z;
+    }
+
+    /**
+     * Move a body outside of the physics step (e.g. round start), without
+     * interpolating from the old position
+     */
+    public void teleport(int id, double x, double y, double z) {
+        setPosition(id, x, y, z);
+        previousX[id] = x;
+        previousY[id] = y;
+        previousZ[id] = z;
+    }
+
+    /**
+     * Remember the current positions as the previous state. Called at the start
+     * of every physics step.
+     */
+    public void savePreviousPositions() {
+        System.arraycopy(positionX, 0, previousX, 0, size);
+        System.arraycopy(positionY, 0, previousY, 0, size);
+        System.arraycopy(positionZ, 0, previousZ, 0, size);
+    }
+
+    /** Write the positions, velocities and forces of all bodies */
+    void save(WorldState state) {
+        state.putInt(size);
+        state.putDoubles(positionX, size);
+        state.putDoubles(positionY, size);
+        state.putDoubles(positionZ, size);
+        state.putDoubles(velocityX, size);
+        state.putDoubles(velocityY, size);
+        state.putDoubles(velocityZ, size);
+        state.putDoubles(forceX, size);
+        state.putDoubles(forceY, size);
+        state.putDoubles(forceZ, size);
+        state.putDoubles(previousX, size);
+        state.putDoubles(previousY, size);
+        state.putDoubles(previousZ, size);
+    }
+
+    /** Read what save() wrote, into a store with the same bodies */
+    void restore(WorldState state) {
+        if (state.getInt() != size) {
+            throw new IllegalArgumentException("The state is of another number of bodies");
+        }
+        state.getDoubles(positionX, size);
+        state.getDoubles(positionY, size);
+        state.getDoubles(positionZ, size);
+        state.getDoubles(velocityX, size);
+        state.getDoubles(velocityY, size);
+        state.getDoubles(velocityZ, size);
+        state.getDoubles(forceX, size);
+        state.getDoubles(forceY, size);
+        state.getDoubles(forceZ, size);
+        state.getDoubles(previousX, size);
+        state.getDoubles(previousY, size);
+        state.getDoubles(previousZ, size);
+    }
+
+    public void setVelocity(int id, double x, double y, double z) {
+        velocityX[id] = x;
+        velocityY[id] = y;
+        velocityZ[id] = z;
+    }
+
+    public void setForce(int id, double x, double y, double z) {
+        forceX[id] = x;
+        forceY[id] = y;
+        forceZ[id] = z;
+    }
+
+    private void allocate(int capacity) {
+        mass = grow(mass, capacity);
+        radius = grow(radius, capacity);
+        positionX = grow(positionX, capacity);
+        positionY = grow(positionY, capacity);
+        positionZ = grow(positionZ, capacity);
+        velocityX = grow(velocityX, capacity);
+        velocityY = grow(velocityY, capacity);
+        velocityZ = grow(velocityZ, capacity);
+        forceX = grow(forceX, capacity);
+        forceY = grow(forceY, capacity);
+        forceZ = grow(forceZ, capacity);
+        previousX = grow(previousX, capacity);
+        previousY = grow(previousY, capacity);
+        previousZ = grow(previousZ, capacity);
+    }
+
+    private double[] grow(double[] array, int capacity) {
+        final double[] newArray = new double[capacity];
+        if (array != null) {
+            System.arraycopy(array, 0, newArray, 0, size);
+        }
+        return newArray;
+    }
+}
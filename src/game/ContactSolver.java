@@ -0,0 +1,187 @@
+package game;
+
+import java.util.Arrays;
+
+import util.ParallelFor;
+
+/**
+ * Resolves the contacts of one collision pass deterministically, serially or in
+ * parallel.
+ * <br />
+ * Candidate contacts (player, other) are found per player, in player order.
+ * Each contact is then given a colour one higher than the last colour of both
+ * its bodies, so no body appears twice in a colour and every body sees its
+ * contacts in order. The colours are resolved one after the other, the contacts
+ * of a colour in parallel. Contacts that share no body commute, so the result
+ * is bit-identical to resolving the contacts one by one in order.
+ */
+class ContactSolver {
+    private static final int MIN_PARALLEL_CONTACTS = 64;
+
+    /** One collision pass: finds and resolves the contacts of a player */
+    interface Pass {
+        /**
+         * Write the candidate others of player into candidates
+         * 
+         * @return the number of candidates
+         */
+        int findCandidates(int player, int[] candidates);
+
+        int getPlayerBodyId(int player);
+
+        int getOtherBodyId(int other);
+
+        /** Resolve the contact, if the bodies still overlap */
+        void resolve(int player, int other);
+    }
+
+    // Per-chunk detection output, merged in chunk order
+    private final int[][] chunkCandidates = new int[ParallelFor.MAX_CHUNKS][0];
+    private final int[][] chunkPlayers = new int[ParallelFor.MAX_CHUNKS][0];
+    private final int[][] chunkOthers = new int[ParallelFor.MAX_CHUNKS][0];
+    private final int[] chunkCount = new int[ParallelFor.MAX_CHUNKS];
+
+    private int count;
+    private int[] contactPlayer = new int[0];
+    private int[] contactOther = new int[0];
+    private int[] contactColour = new int[0];
+    private int[] sortedContacts = new int[0]; // contacts sorted by colour
+    private int[] colourStart = new int[0]; // contacts of colour c are [colourStart[c], colourStart[c+1])
+    private int[] lastColour = new int[0]; // per body id
+    private int numOfColours;
+
+    private Pass pass;
+    private int candidateCapacity;
+
+    private final ParallelFor.Body detectBody = new ParallelFor.Body() {
+        public void run(int chunk, int from, int to) {
+            detect(chunk, from, to);
+        }
+    };
+
+    private final ParallelFor.Body resolveBody = new ParallelFor.Body() {
+        public void run(int chunk, int from, int to) {
+            for (int i = from; i < to; i++) {
+                final int contact = sortedContacts[resolveStart + i];
+                pass.resolve(contactPlayer[contact], contactOther[contact]);
+            }
+        }
+    };
+    private int resolveStart;
+
+    /**
+     * Find and resolve the contacts of numOfPlayers players
+     * 
+     * @param maxCandidates upper bound of candidates per player
+     * @param numOfBodies   upper bound of body ids
+     * @param chunks        number of parallel chunks, 1 for serial
+     */
+    public void solve(Pass pass, int numOfPlayers, int maxCandidates, int numOfBodies, int chunks) {
+        this.pass = pass;
+        this.candidateCapacity = maxCandidates;
+
+        ParallelFor.run(numOfPlayers, chunks, detectBody);
+        merge(chunks);
+        colour(numOfBodies);
+
+        for (int c = 0; c < numOfColours; c++) {
+            resolveStart = colourStart[c];
+            final int contacts = colourStart[c + 1] - colourStart[c];
+            final int resolveChunks = contacts >= MIN_PARALLEL_CONTACTS ? chunks : 1;
+            ParallelFor.run(contacts, Math.min(resolveChunks, contacts), resolveBody);
+        }
+
+        this.pass = null;
+    }
+
+    /** Number of contacts found by the last solve() */
+    public int getContactCount() {
+        return count;
+    }
+
+    private void detect(int chunk, int from, int to) {
+        if (chunkCandidates[chunk].length < candidateCapacity) {
+            chunkCandidates[chunk] = new int[candidateCapacity];
+        }
+        final int[] candidates = chunkCandidates[chunk];
+
+        int found = 0;
+        for (int player = from; player < to; player++) {
+            final int numOfCandidates = pass.findCandidates(player, candidates);
+
+            if (chunkPlayers[chunk].length < found + numOfCandidates) {
+                final int capacity = Math.max(16, 2 * (found + numOfCandidates));
+                chunkPlayers[chunk] = Arrays.copyOf(chunkPlayers[chunk], capacity);
+                chunkOthers[chunk] = Arrays.copyOf(chunkOthers[chunk], capacity);
+            }
+
+            for (int i = 0; i < numOfCandidates; i++) {
+                chunkPlayers[chunk][found] = player;
+                chunkOthers[chunk][found] = candidates[i];
+                found++;
+            }
+        }
+        chunkCount[chunk] = found;
+    }
+
+    private void merge(int chunks) {
+        count = 0;
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            count += chunkCount[chunk];
+        }
+
+        if (contactPlayer.length < count) {
+            final int capacity = Math.max(16, 2 * count);
+            contactPlayer = new int[capacity];
+            contactOther = new int[capacity];
+            contactColour = new int[capacity];
+            sortedContacts = new int[capacity];
+        }
+
+        int offset = 0;
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            System.arraycopy(chunkPlayers[chunk], 0, contactPlayer, offset, chunkCount[chunk]);
+            System.arraycopy(chunkOthers[chunk], 0, contactOther, offset, chunkCount[chunk]);
+            offset += chunkCount[chunk];
+        }
+    }
+
+    private void colour(int numOfBodies) {
+        if (lastColour.length < numOfBodies) {
+            lastColour = new int[numOfBodies];
+        }
+        Arrays.fill(lastColour, 0, numOfBodies, -1);
+
+        numOfColours = 0;
+        for (int i = 0; i < count; i++) {
+            final int bodyA = pass.getPlayerBodyId(contactPlayer[i]);
+            final int bodyB = pass.getOtherBodyId(contactOther[i]);
+            final int colour = Math.max(lastColour[bodyA], lastColour[bodyB]) + 1;
+
+            lastColour[bodyA] = colour;
+            lastColour[bodyB] = colour;
+            contactColour[i] = colour;
+            numOfColours = Math.max(numOfColours, colour + 1);
+        }
+
+        // Counting sort by colour, keeping the contact order inside a colour
+        if (colourStart.length < numOfColours + 1) {
+            colourStart = new int[Math.max(16, 2 * (numOfColours + 1))];
+        }
+        Arrays.fill(colourStart, 0, numOfColours + 1, 0);
+        for (int i = 0; i < count; i++) {
+            colourStart[contactColour[i] + 1]++;
+        }
+        for (int c = 0; c < numOfColours; c++) {
+            colourStart[c + 1] += colourStart[c];
+        }
+        for (int i = 0; i < count; i++) {
+            // colourStart[c] is used as a cursor, and restored below
+            sortedContacts[colourStart[contactColour[i]]++] = i;
+        }
+        for (int c = numOfColours; c > 0; c--) {
+            colourStart[c] = colourStart[c - 1];
+        }
+        colourStart[0] = 0;
+    }
+}
@@ -6,7 +6,11 @@ import core.*;
 import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import util.AssetPipeline;
+import util.FixedStepThread;
+import util.Profiler;
 import util.Timer;
 
 /**
@@ -15,30 +19,76 @@ import util.Timer;
  * - Game flow (rounds, winner)
  * - Different screens (e.g. instructions screen)
  * - Camera switching
+ * <br />
+ * The game flow and the world run on the simulation thread, one physics step
+ * at a time, and publish a WorldSnapshot after every step. The render thread
+ * draws the latest snapshot and the text, and keyboard events are posted to the
+ * simulation thread, so only the simulation thread touches the world.
+ * <br />
+ * Frames are requested from the renderer only when what is drawn changes: every
+ * step in game and on the end screen, and otherwise after a change of screen,
+ * input, or loading progress. The instructions screen is drawn once.
  */
 public class GameRunner implements DrawCallback, KeyListener {
     // Specifies the various game screens
     private enum GameScreen {
-        Instructions, InGame, End
+        Loading, Instructions, InGame, End
     }
 
     private static final double secondsBetweenGames = 3; // time to wait after game ends before restart
     private static final int secondsBeforeGame = 3;
     private static final int PLAYERS = 4;
     private static final int ROUNDS = 10;
+    private static final String INSTRUCTIONS_BACKGROUND = "models/landscape/instructions.png";
+    private static final String GAME_BACKGROUND = "models/landscape/ocean_marine.jpg";
+    private static final String SURFACE_MODEL = "models/surface/surface_r.3ds";
+    private static final String PILLAR_MODEL = "models/pillar/pillar.3ds";
+    private static final String CROWN_MODEL = "models/crown/crown.3ds";
+    private static final String[] PLAYER_MODELS = {
+            "models/player/player_1.3ds",
+            "models/player/player_2.3ds",
+            "models/player/player_3.3ds",
+            "models/player/player_4.3ds" };
+    private static final int PROFILE_LINE_HEIGHT = 44;
+    private static final long STEP_NANOS = (long) (World.PHYSICS_STEP_SECS * 1e9);
+    private static final double AI_DECISIONS_PER_SECOND = 20;
+    private static final double AI_BUDGET_MILLIS = 4; // of a 15 ms step
+    private static final int AI_THREADS = 1;
+
+    // Camera requests, from any thread to the render thread. Player ids follow
+    // the player
+    private static final int NO_CAMERA_CHANGE = -2;
+    private static final int TOP_CAMERA = -1;
+    private static final int NORMAL_CAMERA = 0;
 
     private final Renderer renderer;
+    private final SoundEngine sound = SoundEngine.DEFAULT;
     private final Component canvas;
     private final Camera camera;
     private final ThirdPersonCamera thirdPersonCamera;
-    private World world;
-    private GameScreen gameScreen;
-    private int lastWinner = -1;
+    private final RoundLayout layout = new RoundLayout(PLAYERS);
+    private volatile AssetPipeline assets; // shows the loading progress
+    private volatile boolean isProfileShown = false; // toggled by F3
+
+    // Read by the render thread, written by the simulation thread
+    private volatile GameScreen gameScreen = GameScreen.Loading;
+    private volatile int lastWinner = -1;
+    private volatile Timer startGameTimer; // for waiting before each round
+
+    // Simulation thread only
+    private final FixedStepThread simulation;
+    private final SnapshotBuffer snapshots = new SnapshotBuffer();
+    private World world; // created once, reset every round
     private int thisRoundWinner = -1;
     private Timer endRoundTimer; // for waiting after one player wins.
-    private Timer startGameTimer; // for waiting before each round
     private int[] scores;
     private int totalRounds = 0;
+    private boolean isChanged; // something to draw changed in this step
+
+    // Render thread only
+    private final AtomicInteger cameraRequest = new AtomicInteger(NO_CAMERA_CHANGE);
+    private int followedPlayer; // 0 for a fixed camera
+    private final StringBuilder text = new StringBuilder(); // reused for the text of every frame
 
     public GameRunner(Renderer renderer, Component canvas, Camera camera) {
         this.renderer = renderer;
@@ -46,85 +96,232 @@ public class GameRunner implements DrawCallback, KeyListener {
         this.camera = camera;
         this.renderer.setDrawCallback(this);
         this.thirdPersonCamera = new ThirdPersonCamera(camera);
+        this.simulation = new FixedStepThread("simulation", World.PHYSICS_STEP_SECS, new FixedStepThread.Step() {
+            public void step() {
+                simulate();
+            }
+        });
+
+        // Players start at the edge of the surface, facing its center
+        layout.setPlayer(0, -5, 0, 1, 0);
+        layout.setPlayer(1, 0, 5, 0, -1);
+        layout.setPlayer(2, 0, -5, 0, 1);
+        layout.setPlayer(3, 5, 0, -1, 0);
     }
 
     /**
-     * Restart the game, zeros the score
+     * Load the models, backgrounds and sounds in parallel, showing the progress
+     * meanwhile. Returns when all are loaded
+     */
+    public void loadAssets() throws InterruptedException {
+        final AssetPipeline pipeline = new AssetPipeline();
+        assets = pipeline;
+
+        final java.util.List<String> models = new java.util.ArrayList<String>();
+        models.add(SURFACE_MODEL);
+        models.add(PILLAR_MODEL);
+        models.add(CROWN_MODEL);
+        models.addAll(java.util.Arrays.asList(PLAYER_MODELS));
+        for (final String path : models) {
+            pipeline.add(path, new AssetPipeline.Load() {
+                public void load() throws Exception {
+                    if (renderer.loadModel(path) == null) {
+                        throw new Exception("Cannot load model " + path);
+                    }
+                }
+            });
+        }
+
+        // F1 switches between these, keep both loaded
+        renderer.setBackgroundTexturePath(GAME_BACKGROUND);
+        renderer.preloadTexture(INSTRUCTIONS_BACKGROUND);
+        renderer.preloadTexture(GAME_BACKGROUND);
+
+        for (final SoundEffect effect : SoundEffect.values()) {
+            pipeline.add(effect.name(), new AssetPipeline.Load() {
+                public void load() throws Exception {
+                    effect.load();
+                }
+            });
+        }
+
+        pipeline.await();
+        assets = null;
+    }
+
+    /**
+     * Start the simulation thread and the first game, after loadAssets()
+     */
+    public void start() {
+        simulation.start();
+        restart();
+    }
+
+    /**
+     * Restart the game, zeros the score. Runs on the simulation thread
      */
     public void restart() {
+        simulation.post(new Runnable() {
+            public void run() {
+                restartNow();
+            }
+        });
+    }
+
+    private void restartNow() {
+        isChanged = true;
         scores = new int[PLAYERS];
         totalRounds = 0;
 
-        SoundEngine.stopFinalWinner();
+        sound.stopFinalWinner();
         startGameTimer = new Timer();
         startRound();
-        world.pause();
+        if (world != null)
+            world.pause();
     }
 
     /**
-     * Starts a new round
-     * Recreates the world and sets the camera
+     * Starts a new round, on the simulation thread
+     * Resets the world to the round layout and sets the camera. The world is
+     * created, and its models loaded, only for the first round
      */
-    public void startRound() {
-        world = new World(renderer);
+    private void startRound() {
+        if (world == null) {
+            world = createWorld();
+            if (world == null) {
+                return;
+            }
+        }
+
+        world.reset(layout);
+        isChanged = true;
         setNormalCamera();
+        endRoundTimer = null;
 
-        try {
-            world.loadSurface("models/surface/surface_r.3ds");
-            world.loadPillars("models/pillar/pillar.3ds");
-            world.loadCrown("models/crown/crown.3ds");
+        this.gameScreen = GameScreen.InGame;
+        setBackgroundFromScreen();
+        if (startGameTimer == null) // not first round
+            sound.playStartRound();
+    }
 
-            PlayerController player1 = world.loadPlayer("models/player/player_1.3ds", 1);
-            PlayerController player2 = world.loadPlayer("models/player/player_2.3ds", 2);
-            PlayerController player3 = world.loadPlayer("models/player/player_3.3ds", 3);
-            PlayerController player4 = world.loadPlayer("models/player/player_4.3ds", 4);
+    /**
+     * Create the world for all rounds: load the models, listen to the
+     * keyboard player through the simulation thread, and decide for the AI
+     * players on a worker thread
+     * 
+     * @return the world, or null if a model cannot be loaded
+     */
+    private World createWorld() {
+        final World world = new World(renderer, sound);
 
-            player1.getPlayer().setPosition(new Vector(-5, 0, 0));
-            player1.faceDirection(new Vector(1, 0, 0));
+        try {
+            world.loadSurface(SURFACE_MODEL);
+            world.loadPillars(PILLAR_MODEL);
+            world.loadCrown(CROWN_MODEL);
+
+            for (int i = 0; i < PLAYERS; i++) {
+                PlayerController player = world.loadPlayer(PLAYER_MODELS[i], i + 1);
+                if (player instanceof KeyListener) {
+                    canvas.addKeyListener(postKeys((KeyListener) player));
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
 
-            player2.getPlayer().setPosition(new Vector(0, 0, 5));
-            player2.faceDirection(new Vector(0, 0, -1));
+        world.setAiScheduler(new AiScheduler(world, AI_DECISIONS_PER_SECOND, AI_BUDGET_MILLIS, AI_THREADS));
+        return world;
+    }
 
-            player3.getPlayer().setPosition(new Vector(0, 0, -5));
-            player3.faceDirection(new Vector(0, 0, 1));
+    /**
+     * A key listener that handles the keys of listener on the simulation thread
+     */
+    private KeyListener postKeys(final KeyListener listener) {
+        return new KeyListener() {
+            public void keyTyped(final KeyEvent e) {
+                simulation.post(new Runnable() {
+                    public void run() {
+                        listener.keyTyped(e);
+                        isChanged = true;
+                    }
+                });
+            }
 
-            player4.getPlayer().setPosition(new Vector(5, 0, 0));
-            player4.faceDirection(new Vector(-1, 0, 0));
+            public void keyPressed(final KeyEvent e) {
+                simulation.post(new Runnable() {
+                    public void run() {
+                        listener.keyPressed(e);
+                        isChanged = true;
+                    }
+                });
+            }
 
-            endRoundTimer = null;
+            public void keyReleased(final KeyEvent e) {
+                simulation.post(new Runnable() {
+                    public void run() {
+                        listener.keyReleased(e);
+                        isChanged = true;
+                    }
+                });
+            }
+        };
+    }
 
-            canvas.addKeyListener((KeyListener) player1);
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * One step of the simulation thread: advance the game flow and the world
+     * by one physics step, depending on the current screen, and publish what
+     * to draw
+     */
+    private void simulate() {
+        if (world == null) {
             return;
         }
 
-        this.gameScreen = GameScreen.InGame;
-        setBackgroundFromScreen();
-        if (startGameTimer == null) // not first round
-            SoundEngine.playStartRound();
+        if (gameScreen == GameScreen.End) {
+            world.spinFinalWinner();
+        } else if (gameScreen == GameScreen.InGame) {
+            final Timer countdown = startGameTimer;
+            if (countdown != null && secondsBeforeGame - countdown.elapsedSeconds() + 1 <= 0.5) {
+                startGameTimer = null; // half sec after the go
+                sound.playStartRound();
+                world.run();
+            }
+
+            if (world.isRunning()) {
+                world.step(World.PHYSICS_STEP_SECS);
+            }
+            determineRoundWinner();
+        }
+
+        world.writeSnapshot(snapshots.getBack());
+        snapshots.publish();
+
+        if (isChanged || gameScreen == GameScreen.InGame || gameScreen == GameScreen.End) {
+            renderer.requestFrame();
+        }
+        isChanged = false;
     }
 
     /**
-     * Determine what to draw, depending on the current screen
-     * Update the world if necessary
+     * Draw the latest snapshot of the world, depending on the current screen
      */
     public void drawObjects() {
         renderer.renderBackground();
 
-        if (this.gameScreen == GameScreen.Instructions) {
-            return;
-        } else if (this.gameScreen == GameScreen.End) {
-            this.world.showFinalWinner();
+        if (this.gameScreen == GameScreen.Instructions || this.gameScreen == GameScreen.Loading) {
             return;
         }
 
-        this.world.update();
-        thirdPersonCamera.update();
-
-        determineRoundWinner();
+        final WorldSnapshot snapshot = snapshots.read();
+        final double interpolation = snapshot.getInterpolation(System.nanoTime(), STEP_NANOS);
+        updateCamera(snapshot, interpolation);
+        snapshot.render(renderer, interpolation);
     }
 
+    /**
+     * The world, owned by the simulation thread
+     */
     public World getWorld() {
         return this.world;
     }
@@ -133,58 +330,79 @@ public class GameRunner implements DrawCallback, KeyListener {
      * Draw text on screen
      */
     public void drawText() {
-        if (this.gameScreen == GameScreen.End) {
-            String text = "The winner: player " + lastWinner;
-            renderer.renderText(text, new Point(0, 0));
-        } else if (this.gameScreen == GameScreen.InGame) {
-            if (startGameTimer != null) {
-                double secLeft = secondsBeforeGame - startGameTimer.elapsedSeconds() + 1;
-                if (secLeft > 0.5) { // half sec of the go
+        if (isProfileShown) {
+            drawProfile();
+        }
 
-                    Dimension size = canvas.getSize();
-                    Point middleScreen = new Point(size.width / 2, size.height / 2 - 35);
+        final AssetPipeline loading = assets;
+        final GameScreen gameScreen = this.gameScreen;
+        if (gameScreen == GameScreen.Loading && loading != null) {
+            text.setLength(0);
+            text.append("Loading ").append((int) (loading.getProgress() * 100)).append('%');
+            renderer.renderText(text, canvas.getWidth() / 2 - 100, canvas.getHeight() / 2 - 35);
+            renderer.requestFrame(); // for the progress
+        } else if (gameScreen == GameScreen.End) {
+            text.setLength(0);
+            text.append("The winner: player ").append(lastWinner);
+            renderer.renderText(text, 0, 0);
+        } else if (gameScreen == GameScreen.InGame) {
+            final Timer countdown = startGameTimer; // cleared by the simulation thread
+            if (countdown != null) {
+                double secLeft = secondsBeforeGame - countdown.elapsedSeconds() + 1;
+                if (secLeft > 0.5) { // half sec of the go
+                    int x = canvas.getWidth() / 2;
+                    final int y = canvas.getHeight() / 2 - 35;
 
-                    String openingString;
+                    text.setLength(0);
                     if (secLeft > 1)
-                        openingString = String.valueOf((int) Math.ceil(secLeft - 1));
+                        text.append((int) Math.ceil(secLeft - 1));
                     else {
-                        openingString = "Go!"; // half second for the Go
-                        middleScreen.x -= 20;
+                        text.append("Go!"); // half second for the Go
+                        x -= 20;
                     }
 
-                    renderer.renderText(openingString, middleScreen);
-                } else {
-                    startGameTimer = null;
-                    SoundEngine.playStartRound();
-                    world.run();
+                    renderer.renderText(text, x, y);
                 }
             }
         }
     }
 
+    /**
+     * Draw the phase latencies, one line per phase, at the bottom left
+     */
+    private void drawProfile() {
+        renderer.requestFrame(); // the latencies change
+        final Profiler profiler = Profiler.DEFAULT;
+        final int lines = profiler.getSummaryLineCount();
+        int y = canvas.getHeight() - lines * PROFILE_LINE_HEIGHT;
+        for (int i = 0; i < lines; i++) {
+            text.setLength(0);
+            renderer.renderText(profiler.appendSummaryLine(i, text), 0, y);
+            y += PROFILE_LINE_HEIGHT;
+        }
+    }
+
     /**
      * Determine if there is a winner in this round
      */
     private void determineRoundWinner() {
-        int active = 0;
-        Player winnerPlayer = null;
-        for (PlayerController player : this.world.getPlayers()) {
-            if (player.getPlayer().isOnSurface()) {
-                active++;
-                thisRoundWinner = player.getId();
-                winnerPlayer = player.getPlayer();
-            }
+        final AlivePlayerIndex alivePlayers = world.getAlivePlayers();
+        final int active = alivePlayers.size();
+        if (active > 0) {
+            // Kept when the last players fall together
+            thisRoundWinner = alivePlayers.getId(0);
         }
 
         if (active <= 1) {
             if (active == 1) {
-                world.setWinner(winnerPlayer);
+                world.setWinner(world.getPlayer(thisRoundWinner).getPlayer());
             }
 
             if (endRoundTimer == null) {
-                endRoundTimer = new Timer();
+                isChanged = true;
+                endRoundTimer = new Timer(world.getClock()); // the world steps meanwhile
                 endRoundTimer.restart();
-                SoundEngine.playWinRound();
+                sound.playWinRound();
                 scores[thisRoundWinner - 1] += 1;
                 totalRounds++;
 
@@ -217,16 +435,39 @@ public class GameRunner implements DrawCallback, KeyListener {
             lastWinner = id;
             world.setWinner(world.getPlayer(id).getPlayer());
             setNormalCamera();
-            SoundEngine.playFinalWinner();
+            sound.playFinalWinner();
             gameScreen = GameScreen.End;
         }
     }
 
     /**
-     * Activated by pressing '0'
+     * Activated by pressing '0'. Applied on the render thread
      */
     private void setNormalCamera() {
-        setFixedCamera(new Vector(0, 15, 16), 45);
+        cameraRequest.set(NORMAL_CAMERA);
+    }
+
+    /**
+     * Apply the last camera request, and follow the player of a third person
+     * camera in the snapshot. On the render thread
+     */
+    private void updateCamera(WorldSnapshot snapshot, double interpolation) {
+        final int request = cameraRequest.getAndSet(NO_CAMERA_CHANGE);
+        if (request == NORMAL_CAMERA) {
+            followedPlayer = 0;
+            setFixedCamera(new Vector(0, 15, 16), 45);
+        } else if (request == TOP_CAMERA) {
+            followedPlayer = 0;
+            setTopCamera();
+        } else if (request != NO_CAMERA_CHANGE) {
+            followedPlayer = request;
+            camera.reset();
+        }
+
+        if (followedPlayer != 0) {
+            thirdPersonCamera.setGameObject(snapshot.getPlayer(followedPlayer, interpolation));
+            thirdPersonCamera.update();
+        }
     }
 
     /**
@@ -246,23 +487,14 @@ public class GameRunner implements DrawCallback, KeyListener {
         camera.changePitch(pitch * Math.PI / 180.0);
     }
 
-    /**
-     * Activated by pressing '1'-'4'
-     */
-    private void setThirdPersonCamera(int id) {
-        camera.reset();
-        final PlayerController player = this.world.getPlayer(id);
-        thirdPersonCamera.setGameObject(player.getPlayer());
-    }
-
     /**
      * Set the background, depending on the current screen
      */
     private void setBackgroundFromScreen() {
         if (gameScreen == GameScreen.Instructions) {
-            renderer.setBackgroundTexturePath("models/landscape/instructions.png");
+            renderer.setBackgroundTexturePath(INSTRUCTIONS_BACKGROUND);
         } else {
-            renderer.setBackgroundTexturePath("models/landscape/ocean_marine.jpg");
+            renderer.setBackgroundTexturePath(GAME_BACKGROUND);
         }
     }
 
@@ -270,44 +502,59 @@ public class GameRunner implements DrawCallback, KeyListener {
     }
 
     /**
-     * Switch cameras, move to a new screen or restart
+     * Switch cameras, move to a new screen or restart. Changes to the game are
+     * posted to the simulation thread
      */
     public void keyPressed(KeyEvent e) {
         final int code = e.getKeyCode();
+        renderer.requestFrame(); // e.g. the camera keys
 
         switch (code) {
             case KeyEvent.VK_1:
             case KeyEvent.VK_2:
             case KeyEvent.VK_3:
             case KeyEvent.VK_4:
-                final int playerId = code - KeyEvent.VK_1 + 1;
-                setThirdPersonCamera(playerId);
+                cameraRequest.set(code - KeyEvent.VK_1 + 1); // the player id
                 break;
             case KeyEvent.VK_0:
                 setNormalCamera();
                 break;
             case KeyEvent.VK_9:
-                setTopCamera();
+                cameraRequest.set(TOP_CAMERA);
                 break;
             case KeyEvent.VK_F1:
-                if (gameScreen == GameScreen.InGame) {
-                    gameScreen = GameScreen.Instructions;
-                    this.world.pause();
-                } else if (gameScreen == GameScreen.Instructions) {
-                    gameScreen = GameScreen.InGame;
-                    this.world.run();
-                } else {
-                    return;
-                }
-
-                setBackgroundFromScreen();
+                simulation.post(new Runnable() {
+                    public void run() {
+                        toggleInstructions();
+                    }
+                });
                 break;
             case KeyEvent.VK_R:
                 restart();
                 break;
+            case KeyEvent.VK_F3:
+                isProfileShown = !isProfileShown;
+                break;
         }
     }
 
     public void keyReleased(KeyEvent e) {
+        renderer.requestFrame();
+    }
+
+    /** Show or hide the instructions, pausing the game meanwhile */
+    private void toggleInstructions() {
+        if (gameScreen == GameScreen.InGame) {
+            gameScreen = GameScreen.Instructions;
+            this.world.pause();
+        } else if (gameScreen == GameScreen.Instructions) {
+            gameScreen = GameScreen.InGame;
+            this.world.run();
+        } else {
+            return;
+        }
+
+        isChanged = true;
+        setBackgroundFromScreen();
     }
 }
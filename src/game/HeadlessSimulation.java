@@ -0,0 +1,34 @@
+package game;
+
+/**
+ * Runs rounds of the game without a display, GPU or sound, stepping the worlds
+ * as fast as the CPU allows. All players are AI controlled.
+ * Used for server-side simulation and bulk AI evaluation.
+ * 
+ * Usage: HeadlessSimulation [rounds] [players] [threads] [rollout players] [seed]
+ * <br />
+ * The same seed plays the same rounds, for reproducible benchmarks.
+ * 
+ * @see BatchSimulator
+ */
+public class HeadlessSimulation {
+    private static final int DEFAULT_ROUNDS = 100;
+    private static final int DEFAULT_PLAYERS = 4;
+    private static final double MAX_ROUND_SECS = 120; // a round without a winner ends here
+
+    public static void main(String[] args) throws InterruptedException {
+        final int rounds = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROUNDS;
+        final int numOfPlayers = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PLAYERS;
+        final BatchSimulator simulator = args.length > 2 ? new BatchSimulator(Integer.parseInt(args[2]))
+                : new BatchSimulator();
+
+        final int numOfRolloutPlayers = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+        final Scenario scenario = args.length > 4
+                ? new Scenario(numOfPlayers, MAX_ROUND_SECS, numOfRolloutPlayers, Long.parseLong(args[4]))
+                : new Scenario(numOfPlayers, MAX_ROUND_SECS, numOfRolloutPlayers);
+
+        final BatchSimulator.Results results = simulator.run(scenario, rounds);
+        System.out.println("seed " + scenario.getSeed());
+        System.out.println(results);
+    }
+}
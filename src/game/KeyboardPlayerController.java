@@ -30,6 +30,37 @@ public class KeyboardPlayerController extends PlayerController implements KeyLis
         super(player);
     }
 
+    /** Also forget the held arrow keys */
+    @Override
+    public void reset() {
+        super.reset();
+        upDown = Vector.Zero;
+        leftRight = Vector.Zero;
+    }
+
+    /** Also write the held arrow keys */
+    @Override
+    void save(WorldState state) {
+        super.save(state);
+        state.putDouble(upDown.z());
+        state.putDouble(leftRight.x());
+    }
+
+    @Override
+    void restore(WorldState state) {
+        super.restore(state);
+        upDown = heldKey(state.getDouble(), KeyEvent.VK_UP, KeyEvent.VK_DOWN);
+        leftRight = heldKey(state.getDouble(), KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT);
+    }
+
+    /** The direction of the key held on an axis, from its sign */
+    private static Vector heldKey(double sign, int negativeKey, int positiveKey) {
+        if (sign == 0) {
+            return Vector.Zero;
+        }
+        return keyToDirectionMap.get(sign < 0 ? negativeKey : positiveKey);
+    }
+
     public void keyTyped(KeyEvent e) {
     }
 
@@ -2,62 +2,160 @@ package game;
 
 import core.Vector;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
+import util.FastRandom;
 
 /**
  * Implements AI for PlayerController, using a simple but effective strategy.
+ * <br />
+ * Deciding (choosing a target, where to run and whether to push) is separate
+ * from acting on the decision, so that an AiScheduler can decide on another
+ * thread. Otherwise it decides inline, every step.
  */
 public class OpponentPlayerController extends PlayerController {
 
     private static final double RADIUS_FACTOR = 2.3;
-    private Random random = new Random();
-    private PlayerController target;
+    private final FastRandom random = new FastRandom();
+    private int targetId = -1;
+    private final Vector direction = new Vector(); // scratch for update() and applyDecision()
+
+    // The last decision, until applied
+    private boolean hasDecision;
+    private double runX, runY, runZ;
+    private boolean isPushDecided;
+
+    // Run in a fixed direction instead of deciding, for this many more steps
+    private int heldSteps;
+    private double heldX, heldZ;
 
     public OpponentPlayerController(Player player) {
         super(player);
     }
 
+    @Override
+    public void reset() {
+        super.reset();
+        targetId = -1;
+        hasDecision = false;
+        heldSteps = 0;
+    }
+
     public void update(World world) {
         super.update(world);
 
+        if (heldSteps > 0) {
+            heldSteps--;
+            startRunning(direction.set(heldX, 0, heldZ));
+        } else if (!world.isAiScheduled()) {
+            decide(world.getAiView());
+            applyDecision();
+        }
+    }
+
+    /**
+     * Decide where to run and whether to push, from a view of the world. Only
+     * changes the decision, so it may run on an AI worker thread
+     */
+    public void decide(AiView view) {
+        final int id = getId();
+
         // if i am falling
-        if (!getPlayer().isOnSurface())
+        if (!view.isOnSurface(id))
             return;
 
-        // if target is not valid
-        if (target == null || !target.getPlayer().isOnSurface()) {
-            // fill a list with available targets
-            List<PlayerController> availablePlayers = new ArrayList<PlayerController>();
-            for (PlayerController player : world.getPlayers()) {
-                if (player != this && player.getPlayer().isOnSurface()) {
-                    availablePlayers.add(player);
-                }
-            }
-
-            // if none are available, return
-            if (availablePlayers.size() == 0)
-                return;
-
-            // choose new target randomly
-            final int index = random.nextInt(availablePlayers.size());
-            target = availablePlayers.get(index);
+        // if target is not valid, choose new target randomly among the others
+        if (!view.isOnSurface(targetId)) {
+            targetId = view.randomOther(random, id);
         }
 
         // No target available
-        if (target == null)
+        if (targetId < 0)
             return;
 
         // run towards target
-        final Vector otherPosition = target.getPlayer().getPosition();
-        final Vector direction = otherPosition.subtract(getPlayer().getPosition());
-        startRunning(direction);
+        final double x = view.getX(targetId) - view.getX(id);
+        final double y = view.getY(targetId) - view.getY(id);
+        final double z = view.getZ(targetId) - view.getZ(id);
 
         // if close enough, push target
-        double playerRadius = getPlayer().getRadius();
-        double distance = getPlayer().getPosition().distance(otherPosition);
-        if (distance < playerRadius * RADIUS_FACTOR)
+        final double distance = Math.sqrt(x * x + y * y + z * z);
+        decideRun(x, y, z, distance < view.getRadius(id) * RADIUS_FACTOR);
+    }
+
+    /**
+     * Run in the direction (x,z) for a number of steps, without deciding, e.g.
+     * to try a move in a rollout
+     */
+    public void hold(double x, double z, int steps) {
+        heldX = x;
+        heldZ = z;
+        heldSteps = steps;
+        hasDecision = false;
+    }
+
+    /** Decide to run towards (x,y,z), and whether to push */
+    protected void decideRun(double x, double y, double z, boolean isPush) {
+        runX = x;
+        runY = y;
+        runZ = z;
+        isPushDecided = isPush;
+        hasDecision = true;
+    }
+
+    /** The random numbers of decide() */
+    protected FastRandom getRandom() {
+        return random;
+    }
+
+    /** Whether the decision not yet applied, if any, is to push */
+    protected boolean isPushDecided() {
+        return hasDecision && isPushDecided;
+    }
+
+    /** Also write the target, the decision and the random state */
+    @Override
+    void save(WorldState state) {
+        super.save(state);
+        state.putInt(targetId);
+        state.putBoolean(hasDecision);
+        state.putDouble(runX);
+        state.putDouble(runY);
+        state.putDouble(runZ);
+        state.putBoolean(isPushDecided);
+        state.putInt(heldSteps);
+        state.putDouble(heldX);
+        state.putDouble(heldZ);
+        state.putLong(random.getState());
+    }
+
+    @Override
+    void restore(WorldState state) {
+        super.restore(state);
+        targetId = state.getInt();
+        hasDecision = state.getBoolean();
+        runX = state.getDouble();
+        runY = state.getDouble();
+        runZ = state.getDouble();
+        isPushDecided = state.getBoolean();
+        heldSteps = state.getInt();
+        heldX = state.getDouble();
+        heldZ = state.getDouble();
+        random.setState(state.getLong());
+    }
+
+    @Override
+    void reseed(long seed) {
+        super.reseed(seed);
+        random.setSeed(~seed);
+    }
+
+    /** Act on the last decision, if not yet applied. On the simulation thread */
+    public void applyDecision() {
+        if (!hasDecision)
+            return;
+
+        hasDecision = false;
+        startRunning(direction.set(runX, runY, runZ));
+        if (isPushDecided)
             push(); // try to push
     }
 }
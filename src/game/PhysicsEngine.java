@@ -1,9 +1,11 @@
 package game;
 
-import core.Vector;
-
 /**
- * Integrates a new game object position, based on position, forces and mass
+ * Integrates new game object positions, based on position, forces and mass
+ *
+ * Works on all the bodies of a BodyStore at once. Each kernel is a tight loop
+ * over primitive arrays with no calls or branches, so the JIT can vectorize
+ * it.
  *
  * Units:
  * - Mass - kg
@@ -11,75 +13,83 @@ import core.Vector;
  * - Position - meters
  * - Velocity - m/s
  * - Acceleration - m/s^2
+ *
+ * @see BodyStore
  */
 public class PhysicsEngine {
     public PhysicsEngine() {
     }
 
-    public void update(Player player, double timePassedSecs) {
+    /**
+     * Integrate all bodies and reset their forces
+     */
+    public void update(BodyStore bodies, double timePassedSecs) {
+        update(bodies, 0, bodies.size(), timePassedSecs);
+    }
 
-        // compute acceleration
-        Vector acceleration = computeAcceleration(player);
+    /**
+     * Integrate bodies [from, to) and reset their forces
+     */
+    public void update(BodyStore bodies, int from, int to, double timePassedSecs) {
         // sets new velocity and position
-        integrateVerlet(player, acceleration, timePassedSecs);
-
-        player.setForce(new Vector()); // reset forces.
+        integrateVerlet(bodies, from, to, timePassedSecs);
     }
 
     /**
-     * Returns the acceleration according to Newton's laws of motion (sum F = ma)
+     * Compute new velocity and position of bodies [from, to) and reset their
+     * forces. Using Euler integral
      */
-    private static Vector computeAcceleration(Player player) {
+    static void integrateEuler(BodyStore bodies, int from, int to, double dt) {
+        final double[] m = bodies.mass;
 
-        double m = player.getMass();
-        Vector forces = player.getForce();
-        Vector accelaration = forces.div(m);
-
-        return accelaration;
+        integrateEuler(m, bodies.positionX, bodies.velocityX, bodies.forceX, from, to, dt);
+        integrateEuler(m, bodies.positionY, bodies.velocityY, bodies.forceY, from, to, dt);
+        integrateEuler(m, bodies.positionZ, bodies.velocityZ, bodies.forceZ, from, to, dt);
     }
 
     /**
-     * Compute new velocity and position and sets them to the player.
-     * Using Euler integral
+     * Compute new velocity and position of bodies [from, to) and reset their
+     * forces. Using Verlet integral
      */
-    private static void integrateEuler(Player player, Vector acceleration, double dt) {
+    static void integrateVerlet(BodyStore bodies, int from, int to, double dt) {
+        final double[] m = bodies.mass;
+
+        integrateVerlet(m, bodies.positionX, bodies.velocityX, bodies.forceX, from, to, dt);
+        integrateVerlet(m, bodies.positionY, bodies.velocityY, bodies.forceY, from, to, dt);
+        integrateVerlet(m, bodies.positionZ, bodies.velocityZ, bodies.forceZ, from, to, dt);
+    }
+
+    /** Euler integral on one axis */
+    private static void integrateEuler(double[] m, double[] pos, double[] vel, double[] force,
+            int from, int to, double dt) {
         /*
+         * acceleration = force/m (sum F = ma)
          * vel = vel + acceleration*dt
          * pos = pos + vel*dt
          */
-
-        Vector pos = player.getPosition();
-        Vector vel = player.getVelocity();
-
-        Vector newVel = vel.add(acceleration.mul(dt));
-        ;
-        Vector newPos = pos.add(newVel.mul(dt));
-
-        player.setVelocity(newVel);
-        player.setPosition(newPos);
+        for (int i = from; i < to; i++) {
+            final double newVel = vel[i] + (force[i] / m[i]) * dt;
+            pos[i] = pos[i] + newVel * dt;
+            vel[i] = newVel;
+            force[i] = 0; // reset forces.
+        }
     }
 
-    /**
-     * Compute new velocity and position and sets them to the player.
-     * Using Verlet integral
-     */
-    private static void integrateVerlet(Player player, Vector acceleration, double dt) {
-
+    /** Verlet integral on one axis */
+    private static void integrateVerlet(double[] m, double[] pos, double[] vel, double[] force,
+            int from, int to, double dt) {
         /*
-         * new_vel = vel + player.acceleration()*dt
+         * acceleration = force/m (sum F = ma)
+         * new_vel = vel + acceleration*dt
          * pos = pos + (vel+new_vel)*0.5*dt
          * vel = new_vel
          */
-
-        Vector pos = player.getPosition();
-        Vector vel = player.getVelocity();
-
-        Vector newVel = vel.add(acceleration.mul(dt));
-        ;
-        Vector newPos = pos.add(vel.add(newVel).mul(0.5 * dt)); // difference from Euler here
-
-        player.setVelocity(newVel);
-        player.setPosition(newPos);
+        final double halfDt = 0.5 * dt;
+        for (int i = from; i < to; i++) {
+            final double newVel = vel[i] + (force[i] / m[i]) * dt;
+            pos[i] = pos[i] + (vel[i] + newVel) * halfDt; // difference from Euler here
+            vel[i] = newVel;
+            force[i] = 0; // reset forces.
+        }
     }
-
 }
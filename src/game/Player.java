@@ -1,60 +1,101 @@
-
 package game;
 
 import java.awt.geom.Point2D;
 
 import core.GameObject;
+import core.SceneNode;
 import core.Vector;
 import net.java.joglutils.model.geometry.Model;
 
 /**
  * Implements a game object that is placed on the surface.
- * Maintains data that is used for physics computations (position, velocity,
- * force).
+ * A lightweight view over one body in a BodyStore, which holds the data that
+ * is used for physics computations (position, velocity, force).
+ * Its scene node is drawn; World copies the body position into it.
  * 
  * @see GameObject
+ * @see BodyStore
  */
 public class Player implements GameObject {
+    private final BodyStore bodies;
+    private final int id;
     private final Model model;
-    private final double mass;
-    private final double radius;
-    private Vector force = new Vector();
-    private Vector position = new Vector();
-    private Vector velocity = new Vector();
-    private Vector orientation = new Vector();
+    private final Vector orientation = new Vector();
     private final Vector scaling = new Vector(1, 1, 1);
+    private final SceneNode node = new SceneNode();
     private boolean isOnSurface = true;
 
-    public Player(Model model, double mass, double radius) {
+    /*
+     * Copies of the body state, refreshed by the getters. The store is the owner
+     * of the state, so changing these vectors has no effect.
+     */
+    private final Vector force = new Vector();
+    private final Vector position = new Vector();
+    private final Vector renderPosition = new Vector();
+    private final Vector velocity = new Vector();
+
+    public Player(BodyStore bodies, Model model, double mass, double radius) {
+        this.bodies = bodies;
+        this.id = bodies.add(mass, radius);
         this.model = model;
-        this.mass = mass;
-        this.radius = radius;
+    }
+
+    /** Id of the body in the store */
+    public int getBodyId() {
+        return id;
     }
 
     public void setForce(Vector force) {
-        this.force = force;
+        bodies.setForce(id, force.x(), force.y(), force.z());
     }
 
     public void addForce(Vector force) {
-        this.force = force.add(force);
+        bodies.setForce(id, force.x() + force.x(), force.y() + force.y(), force.z() + force.z());
     }
 
     public void setPosition(Vector position) {
-        this.position = position;
+        setPosition(position.x(), position.y(), position.z());
+    }
+
+    /** Place the player, outside of the physics step (no interpolation) */
+    public void setPosition(double x, double y, double z) {
+        bodies.teleport(id, x, y, z);
+    }
+
+    /** Put the player at a position, at rest, upright and on the surface */
+    public void reset(double x, double y, double z) {
+        bodies.teleport(id, x, y, z);
+        bodies.setVelocity(id, 0, 0, 0);
+        bodies.setForce(id, 0, 0, 0);
+        setOrientation(0, 0, 0);
+        isOnSurface = true;
     }
 
     public void setVelocity(Vector velocity) {
-        this.velocity = velocity;
+        bodies.setVelocity(id, velocity.x(), velocity.y(), velocity.z());
     }
 
     public void addVelocity(Vector velocity) {
-        this.velocity = velocity.add(velocity);
+        bodies.setVelocity(id, velocity.x() + velocity.x(), velocity.y() + velocity.y(),
+                velocity.z() + velocity.z());
     }
 
     public void setOrientation(double xrot, double yrot, double zrot) {
         this.orientation.setX(xrot);
         this.orientation.setY(yrot);
         this.orientation.setZ(zrot);
+        node.setOrientation(xrot, yrot, zrot);
+    }
+
+    /** The player in the scene graph. Its orientation is the player's */
+    public SceneNode getNode() {
+        return node;
+    }
+
+    /** Copy the body position, before and after the last step, into the node */
+    void updateNode() {
+        node.setPosition(bodies.positionX[id], bodies.positionY[id], bodies.positionZ[id],
+                bodies.previousX[id], bodies.previousY[id], bodies.previousZ[id]);
     }
 
     public Model getModel() {
@@ -62,7 +103,11 @@ public class Player implements GameObject {
     }
 
     public Vector getPosition() {
-        return position;
+        return bodies.getPosition(id, position);
+    }
+
+    public Vector getRenderPosition() {
+        return bodies.getPosition(id, renderPosition);
     }
 
     public Vector getOrientation() {
@@ -70,7 +115,7 @@ public class Player implements GameObject {
     }
 
     public Vector getVelocity() {
-        return velocity;
+        return bodies.getVelocity(id, velocity);
     }
 
     public Vector getScaling() {
@@ -78,15 +123,15 @@ public class Player implements GameObject {
     }
 
     public Vector getForce() {
-        return force;
+        return bodies.getForce(id, force);
     }
 
     public double getMass() {
-        return mass;
+        return bodies.getMass(id);
     }
 
     public double getSpeed() {
-        return velocity.size();
+        return getVelocity().size();
     }
 
     public boolean isOnSurface() {
@@ -97,34 +142,50 @@ public class Player implements GameObject {
         this.isOnSurface = isOnSurface;
     }
 
+    /** Write the orientation and whether on the surface. The body is saved by the store */
+    void save(WorldState state) {
+        state.putVector(orientation);
+        state.putBoolean(isOnSurface);
+    }
+
+    /** Read what save() wrote */
+    void restore(WorldState state) {
+        setOrientation(state.getDouble(), state.getDouble(), state.getDouble());
+        isOnSurface = state.getBoolean();
+    }
+
     /** Move the player in case of a collision */
     public void retract(Vector direction, double dist) {
+        retract(direction.x(), direction.z(), dist);
+    }
 
-        double directionX = direction.x(), directionZ = direction.z();
+    /** Move the player dist away from direction (x,z), in case of a collision */
+    public void retract(double directionX, double directionZ, double dist) {
 
         if ((directionX == 0) && (directionZ == 0)) // atan2(0,0) is undefined
             return;
 
         double alpha = Math.atan2(directionZ, directionX);
 
-        Vector delta = new Vector(-dist * Math.cos(alpha), 0, -dist * Math.sin(alpha));
-
-        position = position.add(delta);
+        bodies.setPosition(id,
+                bodies.getPositionX(id) - dist * Math.cos(alpha),
+                bodies.getPositionY(id),
+                bodies.getPositionZ(id) - dist * Math.sin(alpha));
     }
 
     public Point2D.Double getCenter() {
-        return new Point2D.Double(position.x(), position.z());
+        return new Point2D.Double(bodies.getPositionX(id), bodies.getPositionZ(id));
     }
 
     public double getRadius() {
-        return this.radius;
+        return bodies.getRadius(id);
     }
 
     public double overlappingDistance(GameObject obj) {
-        Point2D.Double center1 = getCenter();
-        Point2D.Double center2 = obj.getCenter();
+        final double x = bodies.getPositionX(id), z = bodies.getPositionZ(id);
+        final Vector other = obj.getPosition(); // (x,z) is the center
 
-        double dist = center1.distance(center2);
+        double dist = Math.sqrt(sqr(other.x() - x) + sqr(other.z() - z));
 
         double radius1 = getRadius();
         double radius2 = obj.getRadius();
@@ -134,4 +195,8 @@ public class Player implements GameObject {
 
         return radius1 + radius2 - dist;
     }
+
+    private static double sqr(double value) {
+        return value * value;
+    }
 }
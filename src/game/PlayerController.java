@@ -3,7 +3,8 @@ package game;
 
 import core.Vector;
 
-import java.util.Random;
+import util.Clock;
+import util.FastRandom;
 
 /**
  * Contains logic and behaviors of a Player object (push, fall, etc.)
@@ -16,12 +17,16 @@ public class PlayerController {
     private final static int pushVelocityChangeMin = 7;
     private final static int pushVelocityChangeMax = 10;
     private final static double pushDelayMilisec = 500;
+    private final static double NANOSECS_IN_MSEC = 1e6;
+    private final static Vector originalFaceDirection = new Vector(0, 0, -1);
 
-    private final Random random = new Random();
+    private final FastRandom random = new FastRandom();
+    private Clock clock = Clock.SYSTEM; // World sets its simulation clock
     private final Player player;
     private int id;
     private boolean isRunning;
-    private Vector runDirection;
+    private final Vector runDirection;
+    private final Vector runForce = new Vector(); // scratch for update()
     private boolean pushActivated;
     private double pushStartMilisec;
 
@@ -32,6 +37,14 @@ public class PlayerController {
         pushStartMilisec = -pushDelayMilisec;
     }
 
+    /** Stop running and pushing, face north, as when created */
+    public void reset() {
+        isRunning = false;
+        runDirection.set(0, 0, -1);
+        pushActivated = false;
+        pushStartMilisec = -pushDelayMilisec;
+    }
+
     public Player getPlayer() {
         return this.player;
     }
@@ -44,10 +57,15 @@ public class PlayerController {
         this.id = id;
     }
 
+    /** Time pushes on this clock, the wall clock by default */
+    void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
     /** Start running in the specified direction */
     public void startRunning(Vector runDirection) {
         isRunning = true;
-        this.runDirection = runDirection.normalize();
+        runDirection.normalizeInto(this.runDirection);
     }
 
     public void stopRunning() {
@@ -56,7 +74,7 @@ public class PlayerController {
 
     /** Start push in the current direction */
     public void push() {
-        double time = System.currentTimeMillis();
+        double time = clock.nanoTime() / NANOSECS_IN_MSEC;
 
         // Prevent applying the force too much
         if (time >= pushStartMilisec + pushDelayMilisec)
@@ -65,8 +83,6 @@ public class PlayerController {
 
     /** Change the current player dirction */
     public void faceDirection(Vector direction) {
-        Vector originalFaceDirection = new Vector(0, 0, -1);
-
         double angle;
 
         if (direction.size() == 0)
@@ -97,19 +113,45 @@ public class PlayerController {
                 // Run if: (1) velocity < maxRunVelocity OR (2) running in that direction won't
                 // increase current velocity
                 if ((player.getVelocity().size() < maxRunVelocity) || (angle >= 90))
-                    player.addForce(runDirection.mul(runForcePower));
+                    player.addForce(runDirection.mulInto(runForcePower, runForce));
             }
             // if push flag is active
             if (pushActivated) {
-                double time = System.currentTimeMillis();
+                double time = clock.nanoTime() / NANOSECS_IN_MSEC;
                 pushStartMilisec = time;
                 pushActivated = false;
 
-                player.addVelocity(runDirection.mul(randomPushVelocityChange()));
+                player.addVelocity(runDirection.mulInto(randomPushVelocityChange(), runForce));
             }
         }
     }
 
+    /**
+     * Write the running and pushing state and the random state. Subclasses
+     * add their own after it
+     */
+    void save(WorldState state) {
+        state.putBoolean(isRunning);
+        state.putVector(runDirection);
+        state.putBoolean(pushActivated);
+        state.putDouble(pushStartMilisec);
+        state.putLong(random.getState());
+    }
+
+    /** Read what save() wrote */
+    void restore(WorldState state) {
+        isRunning = state.getBoolean();
+        state.getVector(runDirection);
+        pushActivated = state.getBoolean();
+        pushStartMilisec = state.getDouble();
+        random.setState(state.getLong());
+    }
+
+    /** Start the random numbers from a seed */
+    void reseed(long seed) {
+        random.setSeed(seed);
+    }
+
     /** Returns a random push velocity, to make the game less boring */
     private int randomPushVelocityChange() {
         int result = pushVelocityChangeMin +
@@ -0,0 +1,37 @@
+package game;
+
+/**
+ * Checks that a seeded Scenario is reproducible: plays each round twice, in
+ * fresh worlds, and compares the results. Exits with status 1 on the first
+ * round that differs.
+ * 
+ * Usage: ReplayCheck [rounds] [players] [rollout players] [seed]
+ * 
+ * @see HeadlessSimulation
+ */
+public class ReplayCheck {
+    private static final int DEFAULT_ROUNDS = 10;
+    private static final int DEFAULT_PLAYERS = 4;
+    private static final double MAX_ROUND_SECS = 120; // a round without a winner ends here
+
+    public static void main(String[] args) {
+        final int rounds = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROUNDS;
+        final int numOfPlayers = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PLAYERS;
+        final int numOfRolloutPlayers = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        final Scenario scenario = args.length > 3
+                ? new Scenario(numOfPlayers, MAX_ROUND_SECS, numOfRolloutPlayers, Long.parseLong(args[3]))
+                : new Scenario(numOfPlayers, MAX_ROUND_SECS, numOfRolloutPlayers);
+
+        System.out.println("seed " + scenario.getSeed());
+        for (int round = 0; round < rounds; round++) {
+            final Scenario.RoundResult first = scenario.runRound(round);
+            final Scenario.RoundResult second = scenario.runRound(round);
+            if (!first.equals(second)) {
+                System.out.println("round " + round + " differs: " + first + ", then " + second);
+                System.exit(1);
+            }
+            System.out.println("round " + round + ": " + first);
+        }
+        System.out.println(rounds + " rounds played the same twice");
+    }
+}
@@ -0,0 +1,247 @@
+package game;
+
+import java.util.Arrays;
+
+import util.ParallelFor;
+
+/**
+ * AI that chooses where to run by simulating ahead.
+ * <br />
+ * A decision tries each of eight directions, and the plain AI strategy, in
+ * short rollouts: the world is restored from the AiView state into a headless
+ * sandbox, this player holds the direction for a while and then plays the
+ * plain strategy, as do the others, and the outcome is scored. Rollouts run in
+ * chunks, each chunk with its own sandbox, until the time budget is spent; the
+ * chunks run in parallel if the world's steps do. The move with the best mean
+ * score is decided, pushing as the plain strategy would.
+ * <br />
+ * Rollouts are run at most once a decision period of simulated time. The
+ * decisions in between keep the last move found, e.g. when deciding inline in
+ * every step.
+ * <br />
+ * Rollouts are seeded from the player's random numbers, and scores are summed
+ * in rollout order, so with no time budget decisions are the same in every
+ * run, on any number of cores.
+ *
+ * @see World#addRolloutPlayer(net.java.joglutils.model.geometry.Model, int)
+ */
+public class RolloutPlayerController extends OpponentPlayerController {
+    private static final int DIRECTIONS = 8;
+    private static final int CANDIDATES = DIRECTIONS + 1; // the last is the plain strategy
+    private static final double DEFAULT_HORIZON_SECS = 0.5;
+    private static final double HOLD_FRACTION = 0.5; // of the horizon
+    private static final double DEFAULT_BUDGET_MILLIS = 8;
+    private static final double DEFAULT_DECISION_PERIOD_SECS = 0.25;
+    private static final int MAX_ROLLOUTS_PER_MOVE = 64;
+    private static final int MAX_ROLLOUTS = MAX_ROLLOUTS_PER_MOVE * CANDIDATES;
+    private static final int MIN_PARALLEL_CHUNK = 2 * CANDIDATES;
+
+    // Scores
+    private static final double FALL_SCORE = -100;
+    private static final double OTHER_FELL_SCORE = 20;
+    private static final double CENTER_DISTANCE_SCORE = -1; // per unit from the center
+
+    private static final double[] directionX = new double[DIRECTIONS];
+    private static final double[] directionZ = new double[DIRECTIONS];
+
+    static {
+        for (int i = 0; i < DIRECTIONS; i++) {
+            final double angle = i * 2 * Math.PI / DIRECTIONS;
+            directionX[i] = Math.cos(angle);
+            directionZ[i] = Math.sin(angle);
+        }
+    }
+
+    private final World world;
+    private volatile int horizonSteps;
+    private volatile long budgetNanos;
+    private volatile long decisionPeriodNanos;
+    private volatile int numOfRollouts = MAX_ROLLOUTS; // per decision, of all moves
+
+    // The move found by the last rollouts, -1 for none, and when
+    private int keptMove = -1;
+    private long keptMoveNanos;
+
+    // For one decision, by chunk
+    private final World[] sandboxes = new World[ParallelFor.MAX_CHUNKS];
+    private final WorldState[] states = new WorldState[ParallelFor.MAX_CHUNKS];
+    private final double[] scores = new double[MAX_ROLLOUTS];
+    private final boolean[] isDone = new boolean[MAX_ROLLOUTS];
+    private AiView view;
+    private long deadline;
+    private long seed;
+    private long rollouts; // in all decisions
+
+    /**
+     * @param world the world of the player, of which sandboxes are made once
+     *              all its players are added
+     */
+    public RolloutPlayerController(Player player, World world) {
+        super(player);
+        this.world = world;
+        setHorizonSecs(DEFAULT_HORIZON_SECS);
+        setBudgetMillis(DEFAULT_BUDGET_MILLIS);
+        setDecisionPeriodSecs(DEFAULT_DECISION_PERIOD_SECS);
+    }
+
+    /** How far ahead each rollout simulates */
+    public void setHorizonSecs(double horizonSecs) {
+        this.horizonSteps = Math.max(1, (int) Math.round(horizonSecs / World.PHYSICS_STEP_SECS));
+    }
+
+    /**
+     * Time for the rollouts of one decision, or 0 to run all of them, the
+     * same in every run
+     */
+    public void setBudgetMillis(double budgetMillis) {
+        this.budgetNanos = (long) (budgetMillis * 1e6);
+    }
+
+    /**
+     * How many rollouts of each move a decision runs at most, 1 to 64 (the
+     * default). With no time budget, that many are run every time
+     */
+    public void setRolloutsPerMove(int rolloutsPerMove) {
+        this.numOfRollouts = Math.max(1, Math.min(MAX_ROLLOUTS_PER_MOVE, rolloutsPerMove)) * CANDIDATES;
+    }
+
+    /**
+     * Simulated time between two decisions that run rollouts. The decisions
+     * in between keep the last move found
+     */
+    public void setDecisionPeriodSecs(double decisionPeriodSecs) {
+        this.decisionPeriodNanos = (long) (decisionPeriodSecs * 1e9);
+    }
+
+    /** Number of rollouts run in all decisions */
+    public long getRolloutCount() {
+        return rollouts;
+    }
+
+    /**
+     * Decide as the plain AI, then replace the run direction with the best
+     * move found by the rollouts
+     */
+    @Override
+    public void decide(AiView view) {
+        super.decide(view);
+
+        final int id = getId();
+        if (!view.isOnSurface(id)) {
+            return;
+        }
+
+        // Within the decision period, keep the last move
+        final long sinceKept = view.getNanos() - keptMoveNanos;
+        if (keptMove >= 0 && sinceKept >= 0 && sinceKept < decisionPeriodNanos) {
+            decideMove(keptMove);
+            return;
+        }
+
+        this.view = view;
+        this.deadline = System.nanoTime() + budgetNanos;
+        this.seed = getRandom().nextLong();
+        Arrays.fill(isDone, false);
+        final int total = numOfRollouts;
+        ParallelFor.run(total, ParallelFor.chunks(total, MIN_PARALLEL_CHUNK, world.isParallel()), rolloutBody);
+
+        // The best mean score, of the candidates tried
+        int best = -1;
+        double bestScore = 0;
+        for (int candidate = 0; candidate < CANDIDATES; candidate++) {
+            double score = 0;
+            int count = 0;
+            for (int rollout = candidate; rollout < total; rollout += CANDIDATES) {
+                if (isDone[rollout]) {
+                    score += scores[rollout];
+                    count++;
+                }
+            }
+            rollouts += count;
+            if (count > 0 && (best < 0 || score / count > bestScore)) {
+                best = candidate;
+                bestScore = score / count;
+            }
+        }
+
+        // If there was not enough time to try anything, try again next decision
+        keptMove = best;
+        keptMoveNanos = view.getNanos();
+        if (best >= 0) {
+            decideMove(best);
+        }
+    }
+
+    /** Run in the direction of a candidate, or as decided for the plain strategy */
+    private void decideMove(int candidate) {
+        if (candidate < DIRECTIONS) {
+            decideRun(directionX[candidate], 0, directionZ[candidate], isPushDecided());
+        }
+    }
+
+    /** Also forget the kept move, it was found in another round */
+    @Override
+    public void reset() {
+        super.reset();
+        keptMove = -1;
+    }
+
+    /**
+     * Also forget the kept move, it was found in another state. It is not
+     * saved, so that sandboxes, where this player is plain AI, read the same
+     * state
+     */
+    @Override
+    void restore(WorldState state) {
+        super.restore(state);
+        keptMove = -1;
+    }
+
+    /** Rollouts [from, to) in the sandbox of the chunk, while there is time */
+    private final ParallelFor.Body rolloutBody = new ParallelFor.Body() {
+        public void run(int chunk, int from, int to) {
+            if (sandboxes[chunk] == null) {
+                sandboxes[chunk] = world.createSandbox();
+                states[chunk] = new WorldState();
+            }
+            final World sandbox = sandboxes[chunk];
+            final WorldState state = states[chunk];
+            state.copyFrom(view.getState()); // restoring moves the read cursor
+
+            final int id = getId();
+            final OpponentPlayerController self = (OpponentPlayerController) sandbox.getPlayer(id);
+            for (int rollout = from; rollout < to && hasTime(); rollout++) {
+                final int candidate = rollout % CANDIDATES;
+                sandbox.restore(state);
+                sandbox.setSeed(seed + rollout);
+                if (candidate < DIRECTIONS) {
+                    self.hold(directionX[candidate], directionZ[candidate], (int) (horizonSteps * HOLD_FRACTION));
+                }
+
+                for (int step = 0; step < horizonSteps && self.getPlayer().isOnSurface(); step++) {
+                    sandbox.step(World.PHYSICS_STEP_SECS);
+                }
+
+                scores[rollout] = score(sandbox, self);
+                isDone[rollout] = true;
+            }
+        }
+    };
+
+    /** Whether the budget of the decision is not spent */
+    private boolean hasTime() {
+        return budgetNanos == 0 || System.nanoTime() - deadline < 0;
+    }
+
+    /** How good the end of a rollout is for this player */
+    private static double score(World sandbox, PlayerController self) {
+        if (!self.getPlayer().isOnSurface()) {
+            return FALL_SCORE;
+        }
+
+        final int fallen = sandbox.getPlayers().size() - sandbox.getAlivePlayers().size();
+        final Player player = self.getPlayer();
+        final double distance = Math.hypot(player.getPosition().x(), player.getPosition().z());
+        return fallen * OTHER_FELL_SCORE + distance * CENTER_DISTANCE_SCORE;
+    }
+}
@@ -0,0 +1,51 @@
+package game;
+
+/**
+ * Where each player starts a round, and the direction it faces.
+ * Used by World.reset() to start a round without creating a new World.
+ */
+public class RoundLayout {
+    private final double[] x;
+    private final double[] z;
+    private final double[] faceX;
+    private final double[] faceZ;
+
+    public RoundLayout(int numOfPlayers) {
+        x = new double[numOfPlayers];
+        z = new double[numOfPlayers];
+        faceX = new double[numOfPlayers];
+        faceZ = new double[numOfPlayers];
+    }
+
+    /**
+     * Set the start of a player
+     * 
+     * @param index the player's index in World.getPlayers()
+     */
+    public void setPlayer(int index, double x, double z, double faceX, double faceZ) {
+        this.x[index] = x;
+        this.z[index] = z;
+        this.faceX[index] = faceX;
+        this.faceZ[index] = faceZ;
+    }
+
+    public int getNumOfPlayers() {
+        return x.length;
+    }
+
+    public double getX(int index) {
+        return x[index];
+    }
+
+    public double getZ(int index) {
+        return z[index];
+    }
+
+    public double getFaceX(int index) {
+        return faceX[index];
+    }
+
+    public double getFaceZ(int index) {
+        return faceZ[index];
+    }
+}
@@ -0,0 +1,164 @@
+package game;
+
+import core.NullRenderer;
+import core.Vector;
+import util.FastRandom;
+import util.Profiler;
+
+/**
+ * Describes a headless round: how many players, and how long a round may last.
+ * Every round gets its own World, with collision shapes only, no sound and no profiling, so
+ * rounds can run on any thread at the same time.
+ * <br />
+ * Round i is seeded from the scenario seed and i only, so a batch with the same
+ * seed plays the same rounds, whatever the number of threads. Rollout players
+ * so run a fixed number of rollouts instead of a time budget.
+ * 
+ * @see BatchSimulator
+ */
+public class Scenario {
+    private static final double START_RADIUS = 5;
+    private static final int ROLLOUTS_PER_MOVE = 8;
+
+    private final int numOfPlayers;
+    private final double maxRoundSecs;
+    private final int numOfRolloutPlayers;
+    private final long seed;
+
+    /**
+     * @param numOfPlayers number of AI players
+     * @param maxRoundSecs simulated time after which a round ends without a
+     *                     winner
+     */
+    public Scenario(int numOfPlayers, double maxRoundSecs) {
+        this(numOfPlayers, maxRoundSecs, 0);
+    }
+
+    /**
+     * @param numOfRolloutPlayers how many of the players, from player 1, are
+     *                            RolloutPlayerControllers
+     */
+    public Scenario(int numOfPlayers, double maxRoundSecs, int numOfRolloutPlayers) {
+        this(numOfPlayers, maxRoundSecs, numOfRolloutPlayers, new FastRandom().nextLong());
+    }
+
+    /**
+     * @param seed the rounds are seeded from, to play them again
+     */
+    public Scenario(int numOfPlayers, double maxRoundSecs, int numOfRolloutPlayers, long seed) {
+        this.numOfPlayers = numOfPlayers;
+        this.maxRoundSecs = maxRoundSecs;
+        this.numOfRolloutPlayers = numOfRolloutPlayers;
+        this.seed = seed;
+    }
+
+    public int getNumOfPlayers() {
+        return numOfPlayers;
+    }
+
+    public double getMaxRoundSecs() {
+        return maxRoundSecs;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Create a world with collision shapes only, players placed evenly around the
+     * surface and facing its center
+     */
+    public World createWorld() {
+        final World world = new World(new NullRenderer(), SoundEngine.SILENT, Profiler.DISABLED);
+        world.setParallel(false); // rounds are run in parallel instead
+        world.addSurface(null);
+        world.addPillars(null);
+        world.addCrown(null);
+
+        for (int i = 0; i < numOfPlayers; i++) {
+            final double angle = Math.PI + i * 2 * Math.PI / numOfPlayers;
+            final Vector position = new Vector(Math.cos(angle) * START_RADIUS, 0, Math.sin(angle) * START_RADIUS);
+
+            final PlayerController player;
+            if (i < numOfRolloutPlayers) {
+                final RolloutPlayerController rolloutPlayer = world.addRolloutPlayer(null, i + 1);
+                rolloutPlayer.setBudgetMillis(0); // the same rollouts in every run
+                rolloutPlayer.setRolloutsPerMove(ROLLOUTS_PER_MOVE);
+                player = rolloutPlayer;
+            } else {
+                player = world.addPlayer(null, i + 1, false);
+            }
+            player.getPlayer().setPosition(position);
+            player.faceDirection(position.reverse());
+        }
+
+        return world;
+    }
+
+    /**
+     * Run one round until at most one player is left on the surface
+     *
+     * @param round number of the round in the batch, which it is seeded by
+     */
+    public RoundResult runRound(int round) {
+        final World world = createWorld();
+        world.setSeed(seed + round * 0x9e3779b97f4a7c15L);
+
+        long steps = 0;
+        for (double time = 0; time < maxRoundSecs; time += World.PHYSICS_STEP_SECS) {
+            world.step(World.PHYSICS_STEP_SECS);
+            steps++;
+
+            final AlivePlayerIndex alivePlayers = world.getAlivePlayers();
+            if (alivePlayers.size() <= 1) {
+                return new RoundResult(alivePlayers.size() == 1 ? alivePlayers.getId(0) : -1, steps);
+            }
+        }
+
+        return new RoundResult(-1, steps);
+    }
+
+    /** The outcome of one round */
+    public static class RoundResult {
+        private final int winner;
+        private final long steps;
+
+        RoundResult(int winner, long steps) {
+            this.winner = winner;
+            this.steps = steps;
+        }
+
+        /** The winner id, or -1 if nobody won */
+        public int getWinner() {
+            return winner;
+        }
+
+        public long getSteps() {
+            return steps;
+        }
+
+        /** Simulated round duration */
+        public double getSeconds() {
+            return steps * World.PHYSICS_STEP_SECS;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof RoundResult)) {
+                return false;
+            }
+            final RoundResult round = (RoundResult) other;
+            return winner == round.winner && steps == round.steps;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * winner + (int) (steps ^ (steps >>> 32));
+        }
+
+        @Override
+        public String toString() {
+            return "winner " + winner + " in " + steps + " steps";
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package game;
+
+import util.Clock;
+
+/**
+ * Simulated time of a World: starts at 0 when a round starts, and advances
+ * only by the physics steps. Whatever is timed on it (e.g. the push delay)
+ * happens at the same step in every run.
+ */
+public class SimulationClock implements Clock {
+    private long nanos;
+
+    public long nanoTime() {
+        return nanos;
+    }
+
+    /** Simulated seconds */
+    public double getSeconds() {
+        return nanos / 1e9;
+    }
+
+    void advance(double seconds) {
+        nanos += Math.round(seconds * 1e9);
+    }
+
+    void set(long nanos) {
+        this.nanos = nanos;
+    }
+}
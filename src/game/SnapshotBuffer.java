@@ -0,0 +1,46 @@
+package game;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands WorldSnapshots from the simulation thread to the render thread
+ * without locks.
+ * <br />
+ * The writer fills getBack() and publish()es it; the reader takes the latest
+ * published snapshot with read(). There are three snapshots, so that neither
+ * side ever waits: the writer's, the reader's, and the latest published one,
+ * which they swap with their own. The reader skips snapshots published while it
+ * was drawing, and keeps the one it has when nothing new was published.
+ * <br />
+ * One writer thread and one reader thread.
+ */
+public class SnapshotBuffer {
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4; // set in latest when published and not read yet
+
+    private final WorldSnapshot[] snapshots = { new WorldSnapshot(), new WorldSnapshot(), new WorldSnapshot() };
+    private final AtomicInteger latest = new AtomicInteger(1); // index, and FRESH
+    private int back = 0; // the writer's
+    private int front = 2; // the reader's
+
+    /** The snapshot to write, on the writer thread */
+    public WorldSnapshot getBack() {
+        return snapshots[back];
+    }
+
+    /** Publish the written snapshot, on the writer thread */
+    public void publish() {
+        back = latest.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * The latest published snapshot, on the reader thread. It isn't written
+     * until the next read(). Empty until the first publish()
+     */
+    public WorldSnapshot read() {
+        if ((latest.get() & FRESH) != 0) {
+            front = latest.getAndSet(front) & INDEX_MASK;
+        }
+        return snapshots[front];
+    }
+}
@@ -13,8 +13,8 @@ import javax.sound.sampled.*;
  * codes from the game codes.
  * 1. Define all your sound effect names and the associated wave file.
  * 2. To play a specific sound, simply invoke SoundEffect.SOUND_NAME.play().
- * 3. You might optionally invoke the static method SoundEffect.init() to
- * pre-load all the
+ * 3. You might optionally invoke the static method SoundEffect.init(), or load()
+ * on each sound from worker threads, to pre-load all the
  * sound files, so that the play is not paused while loading the file for the
  * first time.
  * 4. You can use the static variable SoundEffect.volume to mute the sound.
@@ -33,32 +33,56 @@ public enum SoundEffect {
 
     public static Volume volume = Volume.LOW;
 
+    private final String soundFileName;
+
     // Each sound effect has its own clip, loaded with its own sound file.
-    private Clip clip;
+    private volatile Clip clip;
+    private boolean isLoadFailed; // don't retry a missing or bad file on every play
 
     // Constructor to construct each element of the enum with its own sound file.
     SoundEffect(String soundFileName) {
-        try {
-            // Use URL (instead of File) to read from disk and JAR.
-            File sound = new File("sounds/" + soundFileName);
-            // Set up an audio input stream piped from the sound file.
-            AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(sound);
-            // Get a clip resource.
-            clip = AudioSystem.getClip();
-            // Open audio clip and load samples from the audio input stream.
-            clip.open(audioInputStream);
-        } catch (UnsupportedAudioFileException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
-        } catch (LineUnavailableException e) {
-            e.printStackTrace();
+        this.soundFileName = soundFileName;
+    }
+
+    // Load the sound file, if not loaded. Thread-safe.
+    public synchronized void load() throws UnsupportedAudioFileException, IOException, LineUnavailableException {
+        if (clip != null)
+            return;
+
+        // Use URL (instead of File) to read from disk and JAR.
+        File sound = new File("sounds/" + soundFileName);
+        // Set up an audio input stream piped from the sound file.
+        AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(sound);
+        // Get a clip resource.
+        Clip newClip = AudioSystem.getClip();
+        // Open audio clip and load samples from the audio input stream.
+        newClip.open(audioInputStream);
+        clip = newClip;
+    }
+
+    // The clip, loaded on first use. Null if it cannot be loaded.
+    private synchronized Clip getClip() {
+        if (clip == null && !isLoadFailed) {
+            try {
+                load();
+            } catch (UnsupportedAudioFileException e) {
+                e.printStackTrace();
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (LineUnavailableException e) {
+                e.printStackTrace();
+            }
+            isLoadFailed = clip == null;
         }
+        return clip;
     }
 
     // Play or Re-play the sound effect from the beginning, by rewinding.
     public void play() {
         if (volume != Volume.MUTE) {
+            final Clip clip = getClip();
+            if (clip == null)
+                return;
             stop();
             clip.setFramePosition(0); // rewind to the beginning
             clip.start(); // Start playing
@@ -66,12 +90,15 @@ public enum SoundEffect {
     }
 
     public void stop() {
-        if (clip.isRunning())
+        final Clip clip = this.clip;
+        if (clip != null && clip.isRunning())
             clip.stop(); // Stop the player if it is still running
     }
 
     // Optional static method to pre-load all the sound files.
     public static void init() {
-        values(); // calls the constructor for all the elements
+        for (SoundEffect effect : values()) {
+            effect.getClip();
+        }
     }
 }
@@ -1,33 +1,58 @@
-
 package game;
 
 /**
  * Simple wrapper for SoundEffect
+ * Each World plays through its own SoundEngine, so worlds that should be silent
+ * (e.g. headless) never touch the shared clips.
  */
 public class SoundEngine {
-    public static void playStartRound() {
+    /** Plays the SoundEffect clips */
+    public static final SoundEngine DEFAULT = new SoundEngine(true);
+
+    /** Plays nothing, and never loads the sound files */
+    public static final SoundEngine SILENT = new SoundEngine(false);
+
+    private final boolean isEnabled;
+
+    private SoundEngine(boolean isEnabled) {
+        this.isEnabled = isEnabled;
+    }
+
+    public void playStartRound() {
+        if (!isEnabled)
+            return;
         SoundEffect.FinalWinner.stop();
         SoundEffect.StartRound.play();
     }
 
-    public static void playWinRound() {
+    public void playWinRound() {
+        if (!isEnabled)
+            return;
         SoundEffect.WinRound.play();
     }
 
-    public static void playFallEffect() {
+    public void playFallEffect() {
+        if (!isEnabled)
+            return;
         SoundEffect.Lose.play();
     }
 
-    public static void playPillar() {
+    public void playPillar() {
+        if (!isEnabled)
+            return;
         SoundEffect.Pillar.play();
     }
 
-    public static void playFinalWinner() {
+    public void playFinalWinner() {
+        if (!isEnabled)
+            return;
         SoundEffect.WinRound.stop();
         SoundEffect.FinalWinner.play();
     }
 
-    public static void stopFinalWinner() {
+    public void stopFinalWinner() {
+        if (!isEnabled)
+            return;
         SoundEffect.FinalWinner.stop();
     }
 }
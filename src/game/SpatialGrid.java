@@ -0,0 +1,139 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over the surface plane (x,z), used as the collision broad phase.
+ * Items are bodies of a BodyStore, identified by their index in the array
+ * given to build(). The grid is rebuilt every step with a counting sort into
+ * hashed cells, so the arena is unbounded and a steady-state rebuild does not
+ * allocate.
+ * 
+ * @see BodyStore
+ */
+public class SpatialGrid {
+    private final double cellSize;
+
+    private int count;
+    private int mask; // number of buckets - 1, a power of 2
+
+    private int[] bucketStart = new int[0]; // items of bucket b are [bucketStart[b], bucketStart[b+1])
+    private int[] bucketCursor = new int[0];
+    private int[] sortedItems = new int[0];
+    private int[] itemCellX = new int[0];
+    private int[] itemCellZ = new int[0];
+    private int[] itemBucket = new int[0];
+
+    /**
+     * @param cellSize cell edge length, about the diameter of the items
+     */
+    public SpatialGrid(double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Insert items 0..count-1, item i being the body bodyIds[i]
+     */
+    public void build(BodyStore bodies, int[] bodyIds, int count) {
+        ensureCapacity(count);
+        this.count = count;
+
+        Arrays.fill(bucketStart, 0, mask + 2, 0);
+
+        for (int i = 0; i < count; i++) {
+            final int body = bodyIds[i];
+            final int cellX = cell(bodies.positionX[body]);
+            final int cellZ = cell(bodies.positionZ[body]);
+            final int bucket = bucket(cellX, cellZ);
+
+            itemCellX[i] = cellX;
+            itemCellZ[i] = cellZ;
+            itemBucket[i] = bucket;
+            bucketStart[bucket + 1]++;
+        }
+
+        for (int b = 0; b <= mask; b++) {
+            bucketStart[b + 1] += bucketStart[b];
+        }
+        System.arraycopy(bucketStart, 0, bucketCursor, 0, mask + 1);
+
+        // Items are visited in order, so each bucket is sorted
+        for (int i = 0; i < count; i++) {
+            sortedItems[bucketCursor[itemBucket[i]]++] = i;
+        }
+    }
+
+    /**
+     * Find the items in the cells overlapping a square of half size range around
+     * (x,z). The range must cover both radii, and how far the items may have moved
+     * since build(). Safe to call from several threads with different buffers.
+     * 
+     * @param candidates receives the candidate items, sorted. Must hold size()
+     *                   items.
+     * @return the number of candidates
+     */
+    public int query(double x, double z, double range, int[] candidates) {
+        final int minX = cell(x - range), maxX = cell(x + range);
+        final int minZ = cell(z - range), maxZ = cell(z + range);
+
+        int found = 0;
+        for (int cellX = minX; cellX <= maxX; cellX++) {
+            for (int cellZ = minZ; cellZ <= maxZ; cellZ++) {
+                final int bucket = bucket(cellX, cellZ);
+                for (int k = bucketStart[bucket]; k < bucketStart[bucket + 1]; k++) {
+                    final int item = sortedItems[k];
+                    // Other cells may share the bucket
+                    if (itemCellX[item] == cellX && itemCellZ[item] == cellZ) {
+                        candidates[found++] = item;
+                    }
+                }
+            }
+        }
+
+        // Few candidates, insertion sort
+        for (int i = 1; i < found; i++) {
+            final int item = candidates[i];
+            int j = i - 1;
+            while (j >= 0 && candidates[j] > item) {
+                candidates[j + 1] = candidates[j];
+                j--;
+            }
+            candidates[j + 1] = item;
+        }
+
+        return found;
+    }
+
+    /** Number of items inserted by the last build() */
+    public int size() {
+        return count;
+    }
+
+    private int cell(double coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private int bucket(int cellX, int cellZ) {
+        return ((cellX * 73856093) ^ (cellZ * 19349663)) & mask;
+    }
+
+    private void ensureCapacity(int count) {
+        if (count <= sortedItems.length && sortedItems.length > 0) {
+            return;
+        }
+
+        final int capacity = Math.max(count, 16);
+        int buckets = 1;
+        while (buckets < capacity * 2) {
+            buckets <<= 1;
+        }
+
+        mask = buckets - 1;
+        bucketStart = new int[buckets + 1];
+        bucketCursor = new int[buckets];
+        sortedItems = new int[capacity];
+        itemCellX = new int[capacity];
+        itemCellZ = new int[capacity];
+        itemBucket = new int[capacity];
+    }
+}
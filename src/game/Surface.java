@@ -2,15 +2,20 @@
 package game;
 
 import java.awt.geom.Point2D;
-import java.util.Random;
 
 import core.GameObject;
+import core.SceneNode;
 import core.Vector;
 import net.java.joglutils.model.geometry.Model;
+import util.FastRandom;
 
 /**
  * Implements the auto-rotating surface game object.
  * The rotation change is randomized.
+ * <br />
+ * In the scene graph, the tilt node rotates as the surface, and the surface
+ * node scales the model under it. Objects that tilt with the surface, such as
+ * the pillars, are added under the tilt node.
  */
 public class Surface implements GameObject {
     private static final double MAX_ROTATION = 15;
@@ -19,22 +24,68 @@ public class Surface implements GameObject {
 
     private final Model model;
     private final double radius;
-    private final Random random = new Random();
+    private final FastRandom random = new FastRandom();
 
     final Vector position = new Vector();
-    Vector orientation = new Vector();
+    final Vector orientation = new Vector();
     final Vector scaling = new Vector(10, 5, 10);
 
-    private Vector changeDirection = new Vector(0, 1, 1);
-    private Vector changeSize = new Vector(0, 0, 0);
+    private final Vector changeDirection = new Vector(0, 1, 1);
+    private final Vector changeSize = new Vector(0, 0, 0);
+    private final Vector change = new Vector();
+
+    private final SceneNode tiltNode = new SceneNode();
+    private final SceneNode node = new SceneNode(tiltNode);
 
     public Surface(Model model, double radius) {
         this.model = model;
         this.radius = radius;
+        node.setScaling(scaling.x(), scaling.y(), scaling.z());
+    }
+
+    /** The node of the surface tilt, rotated as the current orientation */
+    public SceneNode getTiltNode() {
+        tiltNode.setOrientation(orientation.x(), orientation.y(), orientation.z());
+        return tiltNode;
+    }
+
+    /** The node of the surface itself, under the tilt node */
+    public SceneNode getNode() {
+        getTiltNode();
+        return node;
+    }
+
+    /** Level the surface, as when created */
+    public void reset() {
+        this.orientation.set(0, 0, 0);
+        this.changeDirection.set(0, 1, 1);
+        this.changeSize.set(0, 0, 0);
+        this.change.set(0, 0, 0);
+    }
+
+    /** Write the tilt, how it changes, and the random state */
+    void save(WorldState state) {
+        state.putVector(orientation);
+        state.putVector(changeDirection);
+        state.putVector(changeSize);
+        state.putLong(random.getState());
+    }
+
+    /** Read what save() wrote */
+    void restore(WorldState state) {
+        state.getVector(orientation);
+        state.getVector(changeDirection);
+        state.getVector(changeSize);
+        random.setState(state.getLong());
+    }
+
+    /** Start the random tilt changes from a seed */
+    void reseed(long seed) {
+        random.setSeed(seed);
     }
 
     public void setOrientation(Vector orientation) {
-        this.orientation = orientation;
+        this.orientation.set(orientation);
     }
 
     public Model getModel() {
@@ -45,6 +96,10 @@ public class Surface implements GameObject {
         return this.position;
     }
 
+    public Vector getRenderPosition() {
+        return this.position;
+    }
+
     public Vector getOrientation() {
         return this.orientation;
     }
@@ -62,10 +117,10 @@ public class Surface implements GameObject {
     }
 
     public double overlappingDistance(GameObject obj) {
-        Point2D.Double center1 = getCenter();
-        Point2D.Double center2 = obj.getCenter();
+        final double x = position.x(), z = position.z();
+        final Vector other = obj.getPosition(); // (x,z) is the center
 
-        double dist = center1.distance(center2);
+        double dist = Math.sqrt(sqr(other.x() - x) + sqr(other.z() - z));
 
         double radius1 = getRadius();
         double radius2 = obj.getRadius();
@@ -87,8 +142,8 @@ public class Surface implements GameObject {
         updateChangeAxis(Vector.Axis.Y, timePassedSecs);
         updateChangeAxis(Vector.Axis.Z, timePassedSecs);
 
-        final Vector change = this.changeDirection.mul(this.changeSize);
-        this.orientation = this.orientation.add(change);
+        this.changeDirection.mulInto(this.changeSize, change);
+        this.orientation.addInPlace(change);
     }
 
     /**
@@ -107,4 +162,8 @@ public class Surface implements GameObject {
             changeDirection.setValue(axis, -changeDirection.getValue(axis));
         }
     }
+
+    private static double sqr(double value) {
+        return value * value;
+    }
 }
@@ -0,0 +1,57 @@
+package game;
+
+import core.Matrix;
+import core.Vector;
+
+/**
+ * The coordinate frame of the tilted surface.
+ * Computed once per physics step from the surface orientation and shared by
+ * every body, so moving a force into the surface frame is a few multiply-adds.
+ * 
+ * @see Surface
+ */
+class SurfaceFrame {
+    private final Matrix axisTranslation = Matrix.createIdentity();
+    private final Vector yAxis = new Vector();
+    private final Vector zAxis = new Vector();
+    private double tiltY = Double.NaN;
+    private double tiltZ = Double.NaN;
+
+    /**
+     * Recompute the frame from the surface orientation (degrees). Does nothing
+     * if the tilt did not change.
+     */
+    public void update(Vector orientation) {
+        if (orientation.y() == tiltY && orientation.z() == tiltZ) {
+            return;
+        }
+        tiltY = orientation.y();
+        tiltZ = orientation.z();
+
+        double yRadians = Math.toRadians(tiltY);
+        double zRadians = Math.toRadians(tiltZ);
+
+        /*
+         * rotates a 2D point around the origin (x=0, y=0) using the formula
+         * 
+         * xnew = x * cos(angle) - y * sin(angle)
+         * ynew = y * cos(angle) + x * sin(angle)
+         * 
+         * point (1,0)
+         */
+        // The surface plane creates the new axis
+        zAxis.set(-Math.sin(zRadians), 1 * Math.cos(zRadians), 0);
+        yAxis.set(0, 1 * -Math.sin(yRadians), 1 * Math.cos(yRadians));
+
+        axisTranslation.setAxisTranslation(zAxis, yAxis);
+    }
+
+    /**
+     * Convert a world vector to the surface axis
+     * 
+     * @return dest
+     */
+    public Vector toSurface(Vector vec, Vector dest) {
+        return axisTranslation.transformInto(vec, dest);
+    }
+}
@@ -30,7 +30,7 @@ public class ThirdPersonCamera {
 
         final Vector currentOrientation = this.gameObject.getOrientation();
         final double yaw = (270 - currentOrientation.x()) * Math.PI / 180.0;
-        final Vector currentPosition = this.gameObject.getPosition();
+        final Vector currentPosition = this.gameObject.getRenderPosition();
         final Vector positionChange = new Vector(Math.cos(yaw), 0, Math.sin(yaw)).mul(FOLLOW_DISTANCE);
         final Vector newPosition = currentPosition.subtract(positionChange);
         newPosition.setY(FOLLOW_DISTANCE);
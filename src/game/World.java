@@ -3,10 +3,12 @@ package game;
 
 import net.java.joglutils.model.geometry.Model;
 import core.*;
-import util.Timer;
+import util.ParallelFor;
+import util.Profiler;
+import util.RandomService;
 
-import java.awt.geom.Point2D;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -15,10 +17,15 @@ import java.util.List;
  * - Checking for collisions (players and pillars)
  * - Applying the correct player state
  * - Drawing the world: surface, players, pillars and crown
+ * <br />
+ * Objects are drawn through the scene graph: the pillars are under the surface
+ * tilt node and the crown under the winner's node, so they follow without
+ * being moved.
  */
 public class World {
 
-    private static final int PHYSICS_UPDATE_INTERVAL_MSECS = 15;
+    /** Fixed physics step length. Every step simulates exactly this much time */
+    public static final double PHYSICS_STEP_SECS = 0.015;
 
     // Physics
     // Restitution - value between 1 and 0. 1 = elastic, 0 = perfect inelastic
@@ -35,118 +42,487 @@ public class World {
     private static final double SURFACE_RADIUS = 6.6;
     private static final double PILLAR_MASS = 10;
     private static final double PILLAR_RADIUS = 0.1;
+    private static final double CROWN_HEIGHT = 1.3; // above the winner's center
+
+    // Contacts are searched this far from a player's center. Covers both radii,
+    // plus a diameter that players may be retracted by during a pass.
+    private static final double CONTACT_RANGE = 4 * PLAYER_RADIUS;
+    // Fewest players or bodies per parallel chunk
+    private static final int MIN_PARALLEL_CHUNK = 256;
 
     private final Renderer renderer;
-    private final Timer timer = new Timer();
-    private final Timer physicsTimer = new Timer();
+    private final SoundEngine sound;
+    private final SimulationClock clock = new SimulationClock();
+    private final RandomService randoms = new RandomService();
     private final PhysicsEngine physicsEngine = new PhysicsEngine();
+    private final BodyStore bodies = new BodyStore();
+    private final SurfaceFrame surfaceFrame = new SurfaceFrame();
+
+    // Parallel step. Scratch vectors are per chunk, reclaimed for every player
+    private final VectorPool[] chunkScratch = new VectorPool[ParallelFor.MAX_CHUNKS];
+    private final double[] chunkForceSums = new double[ParallelFor.MAX_CHUNKS]; // for the benchmarks
+    private final int[][] chunkFallen = new int[ParallelFor.MAX_CHUNKS][0]; // ids of the players that fell
+    private final int[] chunkFallenCount = new int[ParallelFor.MAX_CHUNKS];
+    private volatile boolean isParallel = true; // also read by the AI workers
+    private double stepSeconds;
+    private double tiltY;
+    private double tiltZ;
+
+    // Collision broad phase, rebuilt every step. Items are indices into
+    // players / pillars, and the arrays map them to body ids.
+    private final SpatialGrid playerGrid = new SpatialGrid(2 * PLAYER_RADIUS);
+    private final SpatialGrid pillarGrid = new SpatialGrid(2 * PLAYER_RADIUS);
+    private int[] playerBodyIds = new int[0];
+    private int[] pillarBodyIds = new int[0];
+    private final ContactSolver contactSolver = new ContactSolver();
     private boolean isRunning;
 
+    // Latencies of a physics step and its phases
+    private final Profiler.Phase stepPhase;
+    private final Profiler.Phase surfacePhase;
+    private final Profiler.Phase forcesPhase;
+    private final Profiler.Phase integrationPhase;
+    private final Profiler.Phase pillarCollisionsPhase;
+    private final Profiler.Phase playerCollisionsPhase;
+
     private Surface surface;
     private final List<Player> pillars = new ArrayList<Player>();
-    private final List<GameObject> gameObjects = new ArrayList<GameObject>();
+    private final List<Vector> pillarHomes = new ArrayList<Vector>(); // where reset() puts the pillars
+    private final Vector faceScratch = new Vector(); // for reset()
 
     private List<PlayerController> players = new ArrayList<PlayerController>();
+    private final AlivePlayerIndex alivePlayers = new AlivePlayerIndex();
+    private final AiView aiView = new AiView(); // for inline AI decisions
+    private AiScheduler aiScheduler; // null to decide inline
+    private boolean isStateInAiView; // for rollout players
 
     private Player winner;
     private Player crown;
+    private boolean isFinalWinnerShown; // only the winner and crown are drawn
 
     public World(Renderer renderer) {
+        this(renderer, SoundEngine.DEFAULT);
+    }
+
+    /**
+     * @param sound plays the world's sound effects, SoundEngine.SILENT for none
+     */
+    public World(Renderer renderer, SoundEngine sound) {
+        this(renderer, sound, Profiler.DEFAULT);
+    }
+
+    /**
+     * @param sound    plays the world's sound effects, SoundEngine.SILENT for none
+     * @param profiler times the physics step phases, Profiler.DISABLED for none
+     */
+    public World(Renderer renderer, SoundEngine sound, Profiler profiler) {
         this.renderer = renderer;
+        this.sound = sound;
+        this.stepPhase = profiler.phase("step");
+        this.surfacePhase = profiler.phase("surface");
+        this.forcesPhase = profiler.phase("forces");
+        this.integrationPhase = profiler.phase("integration");
+        this.pillarCollisionsPhase = profiler.phase("pillar hits");
+        this.playerCollisionsPhase = profiler.phase("player hits");
         this.winner = null;
         isRunning = true;
     }
 
+    /**
+     * Start a new round in this world: level the surface, put the pillars back,
+     * and place the players as in the layout, at rest and on the surface.
+     * Bodies, controllers and their listeners are reused, nothing is allocated
+     * 
+     * @param layout start of each player, in the order they were added
+     */
+    public void reset(RoundLayout layout) {
+        if (aiScheduler != null) {
+            aiScheduler.reset(); // no decisions of the last round
+        }
+        surface.reset();
+        surfaceFrame.update(surface.getOrientation());
+
+        for (int i = 0; i < pillars.size(); i++) {
+            final Vector home = pillarHomes.get(i);
+            pillars.get(i).reset(home.x(), home.y(), home.z());
+        }
+
+        for (int i = 0; i < players.size(); i++) {
+            final PlayerController player = players.get(i);
+            player.reset();
+            player.getPlayer().reset(layout.getX(i), 0, layout.getZ(i));
+            player.faceDirection(faceScratch.set(layout.getFaceX(i), 0, layout.getFaceZ(i)));
+        }
+        alivePlayers.rebuild();
+
+        setWinner(null);
+        isFinalWinnerShown = false;
+        clock.set(0);
+        isRunning = true;
+    }
+
     /** Pause the timer */
     public void pause() {
         isRunning = false;
     }
 
+    /** Whether the physics is stepped, i.e. not paused */
+    public boolean isRunning() {
+        return isRunning;
+    }
+
     public void run() {
         isRunning = true;
-        this.timer.restart();
     }
 
-    /** Update object positions, check for collisions and draw */
-    public void update() {
-        boolean shouldUpdatePhysics = isRunning &&
-                physicsTimer.elapsedMilliseconds() > PHYSICS_UPDATE_INTERVAL_MSECS;
+    /**
+     * Advance the physics by one step of elapsedSeconds, without drawing.
+     * Driven by the game's fixed step thread, or headless.
+     * <br />
+     * Surface checks, forces and integration run in parallel chunks when there
+     * are enough bodies. Each player only writes its own state in those phases,
+     * and contacts are resolved by ContactSolver, so the result does not depend
+     * on the number of threads.
+     */
+    public void step(double elapsedSeconds) {
+        final long stepStart = stepPhase.start();
+        long start = surfacePhase.start();
+
+        bodies.savePreviousPositions();
+        updateSurface(elapsedSeconds);
+
+        stepSeconds = elapsedSeconds;
+        tiltY = surface.getOrientation().y();
+        tiltZ = surface.getOrientation().z();
 
-        // Try to solve an issue with physics when a round starts
-        if (physicsTimer.elapsedMilliseconds() > 100) {
-            shouldUpdatePhysics = false;
-            physicsTimer.restart();
+        final int playerChunks = ParallelFor.chunks(players.size(), MIN_PARALLEL_CHUNK, isParallel);
+        ensureChunkScratch(playerChunks);
+
+        // Every player falls before any controller looks at the others
+        ParallelFor.run(players.size(), playerChunks, surfaceCheckBody);
+        for (int chunk = 0; chunk < playerChunks; chunk++) { // drop the fallen, for the controllers
+            for (int i = 0; i < chunkFallenCount[chunk]; i++) {
+                alivePlayers.remove(chunkFallen[chunk][i]);
+            }
         }
+        if (aiScheduler != null) {
+            aiScheduler.tick();
+        } else {
+            writeAiView(aiView);
+        }
+        surfacePhase.stop(start);
 
-        // if isn't running, just draw, don't update positions etc.
-        if (shouldUpdatePhysics) {
-            final double elapsedSeconds = physicsTimer.elapsedSeconds();
+        start = forcesPhase.start();
+        ParallelFor.run(players.size(), playerChunks, forcesBody);
+        forcesPhase.stop(start);
 
-            this.surface.update(elapsedSeconds);
+        // Integrate all bodies (players, pillars and crown) in one pass
+        start = integrationPhase.start();
+        ParallelFor.run(bodies.size(), ParallelFor.chunks(bodies.size(), MIN_PARALLEL_CHUNK, isParallel),
+                integrationBody);
+        integrationPhase.stop(start);
 
-            final double tiltY = surface.getOrientation().y();
-            final double tiltZ = surface.getOrientation().z();
+        // The grids are built for both passes, count them with the pillars
+        start = pillarCollisionsPhase.start();
+        buildBroadPhase();
+        collideWithPillars();
+        pillarCollisionsPhase.stop(start);
 
-            for (Player pillar : pillars) {
-                pillar.setOrientation(0, tiltY, tiltZ);
-            }
+        start = playerCollisionsPhase.start();
+        collideWithPlayers();
+        playerCollisionsPhase.stop(start);
 
-            for (PlayerController playerController : players) {
-                final Player player = playerController.getPlayer();
+        clock.advance(elapsedSeconds);
 
-                checkIsOnSurface(player);
+        stepPhase.stop(stepStart);
+    }
 
-                // Add gravity
-                Vector gravity = new Vector(0, -9.8 * player.getMass(), 0);
-                player.addForce(gravity);
+    /**
+     * Run the physics steps on several threads when there are enough bodies.
+     * The result is the same either way.
+     */
+    public void setParallel(boolean isParallel) {
+        this.isParallel = isParallel;
+    }
+
+    /** Whether the physics steps may run on several threads, see setParallel() */
+    public boolean isParallel() {
+        return isParallel;
+    }
+
+    /**
+     * Run the decisions of the AI controllers on the scheduler's workers, or
+     * inline in every step with null (the default)
+     */
+    public void setAiScheduler(AiScheduler aiScheduler) {
+        this.aiScheduler = aiScheduler;
+    }
 
-                applySurfaceForces(tiltY, tiltZ, playerController, player);
+    /** Whether the AI decides on an AiScheduler, not inline */
+    public boolean isAiScheduled() {
+        return aiScheduler != null;
+    }
 
-                physicsEngine.update(player, elapsedSeconds);
+    /** What the AI decides inline from, written every step */
+    AiView getAiView() {
+        return aiView;
+    }
+
+    /**
+     * Copy what the AI sees after the last step into a view: the positions of
+     * the players and whether they are on the surface
+     */
+    public void writeAiView(AiView view) {
+        view.setNanos(clock.nanoTime());
+        view.setAlivePlayers(alivePlayers);
+        for (PlayerController controller : players) {
+            final Player player = controller.getPlayer();
+            final int id = player.getBodyId();
+            view.setPlayer(controller.getId(), bodies.positionX[id], bodies.positionY[id], bodies.positionZ[id],
+                    player.getRadius());
+        }
+        if (isStateInAiView) {
+            save(view.getState());
+        }
+    }
 
-                collideWithPillars(player);
+    /**
+     * Copy the complete simulation state into state: the bodies, the surface
+     * tilt, the pillars, the players and their controllers, the winner, and the
+     * random states. Only primitives are copied, nothing is allocated once the
+     * state is large enough
+     */
+    public void save(WorldState state) {
+        state.clear();
+        bodies.save(state);
+        surface.save(state);
+        for (Player pillar : pillars) {
+            pillar.save(state);
+        }
+        for (PlayerController player : players) {
+            state.putInt(player.getPlayer().getBodyId());
+            player.getPlayer().save(state);
+            player.save(state);
+        }
 
-                collideWithPlayers(playerController, player);
+        int winnerIndex = -1;
+        for (int i = 0; i < players.size(); i++) {
+            if (players.get(i).getPlayer() == winner) {
+                winnerIndex = i;
             }
+        }
+        state.putInt(winnerIndex);
+        state.putBoolean(isFinalWinnerShown);
+        state.putLong(clock.nanoTime());
+    }
 
-            for (Player pillar : pillars) {
-                physicsEngine.update(pillar, elapsedSeconds);
+    /**
+     * Put this world back in a saved state. The state may come from another
+     * world with the same bodies and players, added in the same order, such as
+     * a sandbox of it
+     *
+     * @throws IllegalArgumentException if the state is of another kind of world
+     */
+    public void restore(WorldState state) {
+        if (aiScheduler != null) {
+            aiScheduler.reset(); // no decisions from another state
+        }
+
+        state.rewind();
+        bodies.restore(state);
+        surface.restore(state);
+        surfaceFrame.update(surface.getOrientation());
+        for (Player pillar : pillars) {
+            pillar.restore(state);
+        }
+        for (PlayerController player : players) {
+            if (state.getInt() != player.getPlayer().getBodyId()) {
+                throw new IllegalArgumentException("The state is of other players");
             }
+            player.getPlayer().restore(state);
+            player.restore(state);
+        }
+
+        final int winnerIndex = state.getInt();
+        setWinner(winnerIndex < 0 ? null : players.get(winnerIndex).getPlayer());
+        isFinalWinnerShown = state.getBoolean();
+        clock.set(state.getLong());
+        alivePlayers.rebuild();
+    }
 
-            physicsTimer.restart();
+    /**
+     * Seed all random numbers of the world: the surface tilt, the pushes and
+     * the AI. With the same seed and inputs, the steps are the same in every
+     * run. Without it they are seeded differently every time
+     */
+    public void setSeed(long seed) {
+        randoms.setSeed(seed);
+        if (surface != null) {
+            surface.reseed(randoms.nextSeed());
+        }
+        for (PlayerController player : players) {
+            player.reseed(randoms.nextSeed());
         }
+    }
+
+    /** The seed of the random numbers, see setSeed() */
+    public long getSeed() {
+        return randoms.getSeed();
+    }
 
-        for (GameObject gameObject : gameObjects) {
-            renderer.renderGameObject(gameObject);
+    /** Simulated time since the round started, advanced by step() */
+    public SimulationClock getClock() {
+        return clock;
+    }
+
+    /**
+     * A headless world with the same surface, pillars, crown and players as
+     * this one, to restore the states of this world into and step ahead.
+     * Keyboard players are kept, other players are plain AI. The bodies are
+     * added as GameRunner and Scenario do: pillars, crown, then players
+     */
+    World createSandbox() {
+        final World sandbox = new World(new NullRenderer(), SoundEngine.SILENT, Profiler.DISABLED);
+        sandbox.setParallel(false);
+        sandbox.addSurface(null);
+        for (Vector home : pillarHomes) {
+            sandbox.addPillar(null, home);
+        }
+        if (crown != null) {
+            sandbox.addCrown(null);
+        }
+        for (PlayerController player : players) {
+            sandbox.addPlayer(null, player.getId(), player instanceof KeyboardPlayerController);
         }
+        return sandbox;
+    }
 
-        // draw crown for winner if exists
-        if (winner != null) {
-            showCrown();
+    /**
+     * Start a physics step: tilt the surface and recompute its frame. Used in
+     * step(), package-private for the benchmarks
+     */
+    void updateSurface(double elapsedSeconds) {
+        this.surface.update(elapsedSeconds);
+        this.surfaceFrame.update(surface.getOrientation());
+    }
+
+    /**
+     * Insert the players and pillars into the collision grids. Used in step(),
+     * package-private for the benchmarks
+     */
+    void buildBroadPhase() {
+        playerGrid.build(bodies, playerBodyIds, players.size());
+        pillarGrid.build(bodies, pillarBodyIds, pillars.size());
+    }
+
+    /**
+     * Compute the surface forces of all players without applying them, in
+     * parallel chunks as step() does. Package-private for the benchmarks
+     *
+     * @return the sum of the forces' components, for the benchmark to consume
+     */
+    double computeAllSurfaceForces() {
+        final int chunks = ParallelFor.chunks(players.size(), MIN_PARALLEL_CHUNK, isParallel);
+        ensureChunkScratch(chunks);
+        ParallelFor.run(players.size(), chunks, surfaceForcesBody);
+
+        double sum = 0;
+        for (int i = 0; i < chunks; i++) {
+            sum += chunkForceSums[i];
+        }
+        return sum;
+    }
+
+    private final ParallelFor.Body surfaceForcesBody = new ParallelFor.Body() {
+        public void run(int chunk, int from, int to) {
+            final VectorPool scratch = chunkScratch[chunk];
+
+            double sum = 0;
+            for (int i = from; i < to; i++) {
+                scratch.reset();
+                final Vector force = computeSurfaceForces(players.get(i).getPlayer(), scratch);
+                sum += force.x() + force.y() + force.z();
+            }
+            chunkForceSums[chunk] = sum;
         }
+    };
 
-        timer.restart();
+    private void ensureChunkScratch(int chunks) {
+        for (int i = 0; i < chunks; i++) {
+            if (chunkScratch[i] == null) {
+                chunkScratch[i] = new VectorPool();
+            }
+        }
     }
 
-    /** Used in update() */
-    private void checkIsOnSurface(Player player) {
+    private final ParallelFor.Body surfaceCheckBody = new ParallelFor.Body() {
+        public void run(int chunk, int from, int to) {
+            int fallen = 0;
+            for (int i = from; i < to; i++) {
+                final PlayerController player = players.get(i);
+                if (checkIsOnSurface(player.getPlayer())) {
+                    if (fallen == chunkFallen[chunk].length) {
+                        chunkFallen[chunk] = Arrays.copyOf(chunkFallen[chunk], Math.max(4, fallen * 2));
+                    }
+                    chunkFallen[chunk][fallen++] = player.getId();
+                }
+            }
+            chunkFallenCount[chunk] = fallen;
+        }
+    };
+
+    private final ParallelFor.Body forcesBody = new ParallelFor.Body() {
+        public void run(int chunk, int from, int to) {
+            final VectorPool scratch = chunkScratch[chunk];
+
+            for (int i = from; i < to; i++) {
+                final PlayerController playerController = players.get(i);
+                final Player player = playerController.getPlayer();
+
+                scratch.reset();
+
+                // Add gravity
+                Vector gravity = scratch.acquire(0, -9.8 * player.getMass(), 0);
+                player.addForce(gravity);
+
+                applySurfaceForces(tiltY, tiltZ, playerController, player, scratch);
+            }
+        }
+    };
+
+    private final ParallelFor.Body integrationBody = new ParallelFor.Body() {
+        public void run(int chunk, int from, int to) {
+            physicsEngine.update(bodies, from, to, stepSeconds);
+        }
+    };
+
+    /**
+     * Used in step()
+     *
+     * @return whether the player fell off the surface in this check
+     */
+    private boolean checkIsOnSurface(Player player) {
         // Check if player is on surface
         double playerSurfaceOverlap;
         playerSurfaceOverlap = surface.overlappingDistance(player);
         if (playerSurfaceOverlap < player.getRadius() / 2) {
-            if (player.isOnSurface()) {
-                SoundEngine.playFallEffect();
+            final boolean wasOnSurface = player.isOnSurface();
+            if (wasOnSurface) {
+                sound.playFallEffect();
             }
             player.setIsOnSurface(false);
+            return wasOnSurface;
         }
+        return false;
     }
 
     /** Used in update() */
-    private void applySurfaceForces(double tiltY, double tiltZ, PlayerController playerController, Player player) {
+    private void applySurfaceForces(double tiltY, double tiltZ, PlayerController playerController, Player player,
+            VectorPool scratch) {
         if (player.isOnSurface()) { // if player is on surface
 
             // add slide forces and update
-            Vector surfaceForce = computeSurfaceForces(player);
+            Vector surfaceForce = computeSurfaceForces(player, scratch);
             player.setForce(surfaceForce);
             playerController.update(this);
 
@@ -157,74 +533,185 @@ public class World {
             playerController.update(this); // not really neccessary?
     }
 
-    /** Used in update() */
-    private void collideWithPlayers(PlayerController playerController, Player player) {
-        for (PlayerController otherController : players) {
-            if (playerController != otherController) {
+    /**
+     * Resolve the player-player contacts. Used in update(), after
+     * buildBroadPhase(). Package-private for the benchmarks
+     */
+    void collideWithPlayers() {
+        contactSolver.solve(playerContacts, players.size(), players.size(), bodies.size(),
+                ParallelFor.chunks(players.size(), MIN_PARALLEL_CHUNK, isParallel));
+    }
 
-                Player other = otherController.getPlayer();
+    /**
+     * Resolve the player-pillar contacts. Used in update(), after
+     * buildBroadPhase(). Package-private for the benchmarks
+     */
+    void collideWithPillars() {
+        contactSolver.solve(pillarContacts, players.size(), pillars.size(), bodies.size(),
+                ParallelFor.chunks(players.size(), MIN_PARALLEL_CHUNK, isParallel));
+    }
+
+    /** Contacts between players. Every overlapping pair is found from both sides */
+    private final ContactSolver.Pass playerContacts = new ContactSolver.Pass() {
+        public int findCandidates(int player, int[] candidates) {
+            final int bodyId = playerBodyIds[player];
+            final double x = bodies.getPositionX(bodyId), z = bodies.getPositionZ(bodyId);
+            final int numOfCandidates = playerGrid.query(x, z, CONTACT_RANGE, candidates);
+
+            int found = 0;
+            for (int i = 0; i < numOfCandidates; i++) {
+                final int other = candidates[i];
+                if (other != player && isNear(bodyId, playerBodyIds[other], CONTACT_RANGE)) {
+                    candidates[found++] = other;
+                }
+            }
+            return found;
+        }
+
+        public int getPlayerBodyId(int player) {
+            return playerBodyIds[player];
+        }
+
+        public int getOtherBodyId(int other) {
+            return playerBodyIds[other];
+        }
 
-                double overlapdist = player.overlappingDistance(other);
+        public void resolve(int playerIndex, int otherIndex) {
+            final Player player = players.get(playerIndex).getPlayer();
+            final Player other = players.get(otherIndex).getPlayer();
 
-                if (overlapdist > 0) {
-                    // collision of two players
-                    Point2D.Double center1 = player.getCenter();
-                    Point2D.Double center2 = other.getCenter();
+            double overlapdist = player.overlappingDistance(other);
 
-                    Vector retractDirection = new Vector(center2.x - center1.x, 0, center2.y - center1.y);
+            if (overlapdist > 0) {
+                // collision of two players
+                final int bodyId = player.getBodyId();
+                final int otherId = other.getBodyId();
 
-                    player.retract(retractDirection, overlapdist);
+                player.retract(
+                        bodies.getPositionX(otherId) - bodies.getPositionX(bodyId),
+                        bodies.getPositionZ(otherId) - bodies.getPositionZ(bodyId),
+                        overlapdist);
 
-                    collision(player, other, PLAYER_PLAYER_COLLISION_RESTITUION_COEFFICIENT);
+                collision(player, other, PLAYER_PLAYER_COLLISION_RESTITUION_COEFFICIENT);
+            }
+        }
+    };
+
+    /** Contacts between players and pillars still on the surface */
+    private final ContactSolver.Pass pillarContacts = new ContactSolver.Pass() {
+        public int findCandidates(int player, int[] candidates) {
+            final int bodyId = playerBodyIds[player];
+            final double x = bodies.getPositionX(bodyId), z = bodies.getPositionZ(bodyId);
+            final int numOfCandidates = pillarGrid.query(x, z, CONTACT_RANGE, candidates);
+
+            int found = 0;
+            for (int i = 0; i < numOfCandidates; i++) {
+                final int pillar = candidates[i];
+                if (pillars.get(pillar).isOnSurface() && isNear(bodyId, pillarBodyIds[pillar], CONTACT_RANGE)) {
+                    candidates[found++] = pillar;
                 }
             }
+            return found;
         }
-    }
 
-    /** Used in update() */
-    private void collideWithPillars(Player player) {
-        for (Player pillar : pillars) {
+        public int getPlayerBodyId(int player) {
+            return playerBodyIds[player];
+        }
+
+        public int getOtherBodyId(int other) {
+            return pillarBodyIds[other];
+        }
+
+        public void resolve(int playerIndex, int pillarIndex) {
+            final Player player = players.get(playerIndex).getPlayer();
+            final Player pillar = pillars.get(pillarIndex);
+
             if (!pillar.isOnSurface())
-                continue;
+                return;
 
             final double overlapdist = player.overlappingDistance(pillar);
             if (overlapdist > 0) {
-                pillar.setForce(new Vector(0, 1e5, 0));
+                final int bodyId = player.getBodyId();
+                final int pillarId = pillar.getBodyId();
+
+                bodies.setForce(pillarId, 0, 1e5, 0);
                 pillar.setIsOnSurface(false);
-                SoundEngine.playPillar();
+                sound.playPillar();
 
                 // collision of player & pillar
-                Point2D.Double center1 = player.getCenter();
-                Point2D.Double center2 = pillar.getCenter();
-
-                Vector retractDirection = new Vector(center2.x - center1.x, 0, center2.y - center1.y);
-
-                player.retract(retractDirection, overlapdist);
+                player.retract(
+                        bodies.getPositionX(pillarId) - bodies.getPositionX(bodyId),
+                        bodies.getPositionZ(pillarId) - bodies.getPositionZ(bodyId),
+                        overlapdist);
                 collision(player, pillar, PLAYER_PILLAR_COLLISION_RESTITUTION_COEFFICIENT);
             }
         }
-    }
+    };
 
-    /** Show a crown above the winning player */
-    private void showCrown() {
-        Vector winnerPos = winner.getPosition();
-        Vector orientation = winner.getOrientation();
-
-        crown.setPosition(new Vector(winnerPos.x(), winnerPos.y() + 1.3, winnerPos.z()));
-        crown.setOrientation(0, orientation.y(), orientation.z());
-        renderer.renderGameObject(crown);
+    /** Whether the centers of two bodies are closer than range */
+    private boolean isNear(int bodyA, int bodyB, double range) {
+        final double dx = bodies.getPositionX(bodyB) - bodies.getPositionX(bodyA);
+        final double dz = bodies.getPositionZ(bodyB) - bodies.getPositionZ(bodyA);
+        return dx * dx + dz * dz < range * range;
     }
 
-    /** Show only the final winner */
-    public void showFinalWinner() {
+    /**
+     * Turn the final winner a little, at the center. From now until reset(),
+     * snapshots show only the winner and the crown
+     */
+    public void spinFinalWinner() {
         if (winner == null) {
             return;
         }
+        isFinalWinnerShown = true;
         winner.setPosition(Vector.Zero);
         winner.setOrientation(winner.getOrientation().x() - 0.5, 0, 0);
-        renderer.renderGameObject(winner);
+    }
+
+    /**
+     * Copy what is drawn after the last step into a snapshot: the world
+     * matrices of the surface, pillars and players, and of the crown of the
+     * winner, and how far they moved in the step
+     */
+    public void writeSnapshot(WorldSnapshot snapshot) {
+        snapshot.clear(System.nanoTime());
+        for (Player pillar : pillars) {
+            pillar.updateNode();
+        }
+        for (PlayerController player : players) {
+            player.getPlayer().updateNode();
+        }
+
+        if (isFinalWinnerShown) {
+            snapshot.add(winner.getModel(), winner.getRadius(), winner.getNode());
+            addCrownToSnapshot(snapshot);
+            return;
+        }
 
-        showCrown();
+        if (surface != null) {
+            snapshot.add(surface.getModel(), surface.getRadius(), surface.getNode());
+        }
+        for (Player pillar : pillars) {
+            snapshot.add(pillar.getModel(), pillar.getRadius(), pillar.getNode());
+        }
+        for (PlayerController controller : players) {
+            final Player player = controller.getPlayer();
+            final int id = player.getBodyId();
+            final int index = snapshot.add(player.getModel(), player.getRadius(), player.getNode());
+            snapshot.setPlayer(controller.getId(), index,
+                    bodies.previousX[id], bodies.previousY[id], bodies.previousZ[id],
+                    bodies.positionX[id], bodies.positionY[id], bodies.positionZ[id], player.getOrientation());
+        }
+        if (winner != null) {
+            addCrownToSnapshot(snapshot);
+        }
+    }
+
+    /** The crown, under the winner's node */
+    private void addCrownToSnapshot(WorldSnapshot snapshot) {
+        if (crown != null) {
+            snapshot.add(crown.getModel(), crown.getRadius(), crown.getNode());
+        }
     }
 
     /**
@@ -234,13 +721,17 @@ public class World {
         return players;
     }
 
+    /** The player with this id, or null */
     public PlayerController getPlayer(int id) {
-        for (PlayerController player : players) {
-            if (player.getId() == id) {
-                return player;
-            }
-        }
-        return null;
+        return alivePlayers.get(id);
+    }
+
+    /**
+     * The players still on the surface, as of the surface checks of the last
+     * step. Controllers pick their targets from it
+     */
+    public AlivePlayerIndex getAlivePlayers() {
+        return alivePlayers;
     }
 
     /**
@@ -251,36 +742,18 @@ public class World {
      * Also, if no forces are active on the player, but he has velocity, this method
      * will calculate the friction.
      */
-    private Vector computeSurfaceForces(Player p) {
-        final double tiltY = surface.getOrientation().y();
-        final double tiltZ = surface.getOrientation().z();
-
+    Vector computeSurfaceForces(Player p, VectorPool scratch) {
         Vector velocity = p.getVelocity();
         Vector F = p.getForce();
 
         double N/* Normal */, Ffmax/* Max static friction */;
 
-        double yRadians = Math.toRadians(tiltY);
-        double zRadians = Math.toRadians(tiltZ);
-
-        /*
-         * rotates a 2D point around the origin (x=0, y=0) using the formula
-         * 
-         * xnew = x * cos(angle) - y * sin(angle)
-         * ynew = y * cos(angle) + x * sin(angle)
-         * 
-         * point (1,0)
-         */
         // Convert F to new axis, the surface plane creates the new axis
-        Vector zAxis = new Vector(-Math.sin(zRadians), 1 * Math.cos(zRadians), 0);
-        Vector yAxis = new Vector(0, 1 * -Math.sin(yRadians), 1 * Math.cos(yRadians));
-
-        Matrix axisTranslationMatrix = Matrix.createAxisTranslation(zAxis, yAxis);
-        Vector newF = axisTranslationMatrix.mul(F);
+        Vector newF = surfaceFrame.toSurface(F, scratch.acquire());
 
         // Take the horizontal force as the Pushing force
-        Vector Fhorizontal = new Vector(newF.x(), 0, newF.z());
-        Vector Ffsign, Ff;
+        Vector Fhorizontal = scratch.acquire(newF.x(), 0, newF.z());
+        Vector Ff = scratch.acquire();
         // Take the vertical force as the Normal
         N = -newF.y();
 
@@ -288,14 +761,17 @@ public class World {
         Ffmax = STATIC__FRICTION_COEFFICIENT * N;
         if ((Ffmax < Fhorizontal.size()) || (velocity.size() != 0)) {
             // Calculate friction force
-            Ffsign = velocity.size() == 0 ? Fhorizontal.normalize().reverse() : velocity.normalize().reverse();
-            Ff = Ffsign.mul(KINETIC_FRICTION_COEFFICIENT * N);
+            if (velocity.size() == 0)
+                Fhorizontal.normalizeInto(Ff).scaleInPlace(-1);
+            else
+                velocity.normalizeInto(Ff).scaleInPlace(-1);
+            Ff.scaleInPlace(KINETIC_FRICTION_COEFFICIENT * N);
 
             // Add friction to horizontal force
-            Fhorizontal = Fhorizontal.add(Ff);
+            Fhorizontal.addInPlace(Ff);
         } else
             // horizontal force is not greater than static friction. Don't move
-            Fhorizontal = new Vector(0, 0, 0);
+            Fhorizontal.set(0, 0, 0);
 
         return Fhorizontal;
     }
@@ -316,21 +792,27 @@ public class World {
      */
     private void collision(Player p1, Player p2, double CR) {
 
-        double m1, m2; // player masses
-        Vector u1, u2; // player velocities BEFORE collision
-        Vector v1, v2; // player velocities AFTER collision
-
-        m1 = p1.getMass();
-        m2 = p2.getMass();
-        u1 = p1.getVelocity();
-        u2 = p2.getVelocity();
+        final double m1 = p1.getMass(), m2 = p2.getMass(); // player masses
+        final int id1 = p1.getBodyId(), id2 = p2.getBodyId();
 
         // v1 = ( m1*u1 + m2*u2 + m2*CR*(u2-u1) ) / (m1+m2)
-        v1 = u1.mul(m1).add(u2.mul(m2)).add(u2.subtract(u1).mul(m2 * CR)).div(m1 + m2);
-        v2 = u2.mul(m2).add(u1.mul(m1)).add(u1.subtract(u2).mul(m1 * CR)).div(m1 + m2);
+        // v2 = ( m2*u2 + m1*u1 + m1*CR*(u1-u2) ) / (m1+m2)
+        final double u1x = bodies.velocityX[id1], u1y = bodies.velocityY[id1], u1z = bodies.velocityZ[id1];
+        final double u2x = bodies.velocityX[id2], u2y = bodies.velocityY[id2], u2z = bodies.velocityZ[id2];
+
+        bodies.setVelocity(id1,
+                collisionVelocity(u1x, u2x, m1, m2, CR),
+                collisionVelocity(u1y, u2y, m1, m2, CR),
+                collisionVelocity(u1z, u2z, m1, m2, CR));
+        bodies.setVelocity(id2,
+                collisionVelocity(u2x, u1x, m2, m1, CR),
+                collisionVelocity(u2y, u1y, m2, m1, CR),
+                collisionVelocity(u2z, u1z, m2, m1, CR));
+    }
 
-        p1.setVelocity(v1);
-        p2.setVelocity(v2);
+    /** One velocity component after collision, u1 and u2 before. See collision() */
+    private static double collisionVelocity(double u1, double u2, double m1, double m2, double CR) {
+        return (u1 * m1 + u2 * m2 + (u2 - u1) * (m2 * CR)) / (m1 + m2);
     }
 
     /**
@@ -355,8 +837,17 @@ public class World {
         if (model == null) {
             throw new Exception("Cannot load surface model");
         }
+        addSurface(model);
+    }
+
+    /**
+     * Add the surface
+     * 
+     * @param model surface model, or null for collision shapes only (headless)
+     */
+    public void addSurface(Model model) {
         this.surface = new Surface(model, SURFACE_RADIUS);
-        this.gameObjects.add(this.surface);
+        this.surface.reseed(randoms.nextSeed());
     }
 
     /**
@@ -371,16 +862,39 @@ public class World {
             throw new Exception("Cannot load pillar model");
         }
 
-        double num = (2 * Math.PI) / NUM_OF_PILLARS;
+        addPillars(model);
+    }
+
+    /**
+     * Add the pillars evenly around the edge of the surface
+     * 
+     * @param model pillar model, or null for collision shapes only (headless)
+     */
+    public void addPillars(Model model) {
+        addPillars(model, NUM_OF_PILLARS);
+    }
+
+    /** Add pillars evenly around the edge of the surface */
+    void addPillars(Model model, int count) {
+        double num = (2 * Math.PI) / count;
         double EDGE = surface.getRadius();
-        for (double angle = 0; angle < 2 * Math.PI && pillars.size() < NUM_OF_PILLARS; angle += num) {
-            Player pillar = new Player(model, PILLAR_MASS, PILLAR_RADIUS);
-            pillar.setPosition(new Vector(Math.cos(angle) * EDGE, 0, Math.sin(angle) * EDGE));
-            this.gameObjects.add(pillar);
-            this.pillars.add(pillar);
+        double angle = 0;
+        for (int i = 0; i < count; i++, angle += num) {
+            addPillar(model, new Vector(Math.cos(angle) * EDGE, 0, Math.sin(angle) * EDGE));
         }
     }
 
+    /** Add one pillar. Also used by the benchmarks */
+    Player addPillar(Model model, Vector position) {
+        Player pillar = new Player(bodies, model, PILLAR_MASS, PILLAR_RADIUS);
+        pillar.setPosition(position);
+        this.pillarHomes.add(new Vector(position.x(), position.y(), position.z()));
+        pillar.getNode().setParent(surface.getTiltNode()); // tilts with the surface
+        this.pillarBodyIds = append(pillarBodyIds, pillars.size(), pillar.getBodyId());
+        this.pillars.add(pillar);
+        return pillar;
+    }
+
     /**
      * load player model (*.3ds file) and add it to the game <br />
      * for loading numerous players, call loadPlayer numerous times.
@@ -394,15 +908,53 @@ public class World {
             throw new Exception("Cannot load player model");
         }
 
-        Player gamePlayer = new Player(model, PLAYER_MASS, PLAYER_RADIUS);
-        gameObjects.add(gamePlayer);
+        return addPlayer(model, id);
+    }
+
+    /** Add a player, controlled by keyboard if id is 1. Also used by the benchmarks */
+    PlayerController addPlayer(Model model, int id) {
+        return addPlayer(model, id, id == 1);
+    }
+
+    /**
+     * Add a player with a keyboard or AI controller
+     * 
+     * @param model      player model, or null for collision shapes only (headless)
+     * @param isKeyboard true for a KeyboardPlayerController, false for AI
+     */
+    public PlayerController addPlayer(Model model, int id, boolean isKeyboard) {
+        Player gamePlayer = new Player(bodies, model, PLAYER_MASS, PLAYER_RADIUS);
 
-        PlayerController player = (id == 1) ? new KeyboardPlayerController(gamePlayer)
+        PlayerController player = isKeyboard ? new KeyboardPlayerController(gamePlayer)
                 : new OpponentPlayerController(gamePlayer);
 
+        addController(player, id);
+        return player;
+    }
+
+    /**
+     * Add an AI player that chooses its moves by simulating ahead, after the
+     * pillars and crown
+     *
+     * @param model player model, or null for collision shapes only (headless)
+     */
+    public RolloutPlayerController addRolloutPlayer(Model model, int id) {
+        Player gamePlayer = new Player(bodies, model, PLAYER_MASS, PLAYER_RADIUS);
+        RolloutPlayerController player = new RolloutPlayerController(gamePlayer, this);
+
+        addController(player, id);
+        this.isStateInAiView = true;
+        return player;
+    }
+
+    /** Add the controller of a new player, on the world's clock and random numbers */
+    private void addController(PlayerController player, int id) {
         player.setId(id);
+        player.setClock(clock);
+        player.reseed(randoms.nextSeed());
+        this.playerBodyIds = append(playerBodyIds, players.size(), player.getPlayer().getBodyId());
         this.players.add(player);
-        return player;
+        this.alivePlayers.add(player);
     }
 
     /**
@@ -417,7 +969,17 @@ public class World {
             throw new Exception("Cannot load crown model");
         }
 
-        crown = new Player(model, 1, PLAYER_RADIUS);
+        addCrown(model);
+    }
+
+    /**
+     * Add the crown
+     * 
+     * @param model crown model, or null for collision shapes only (headless)
+     */
+    public void addCrown(Model model) {
+        crown = new Player(bodies, model, 1, PLAYER_RADIUS);
+        crown.getNode().setPosition(0, CROWN_HEIGHT, 0); // above the winner, see setWinner()
     }
 
     /**
@@ -427,6 +989,17 @@ public class World {
      */
     public void setWinner(Player player) {
         this.winner = player;
+        if (crown != null) {
+            crown.getNode().setParent(player == null ? null : player.getNode());
+        }
     }
 
+    /** Set array[index] = value, growing the array if needed */
+    private static int[] append(int[] array, int index, int value) {
+        if (index == array.length) {
+            array = Arrays.copyOf(array, Math.max(16, array.length * 2));
+        }
+        array[index] = value;
+        return array;
+    }
 }
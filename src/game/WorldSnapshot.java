@@ -0,0 +1,199 @@
+package game;
+
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+
+import core.GameObject;
+import core.Renderer;
+import core.SceneNode;
+import core.Vector;
+import net.java.joglutils.model.geometry.Model;
+
+/**
+ * The drawable state of a World after one physics step: the model, world
+ * matrix and last step's motion of every object to draw, and the positions of
+ * the players for the camera.
+ * <br />
+ * Written by the simulation thread with World.writeSnapshot() and then only
+ * read, by the render thread, until the SnapshotBuffer hands it back for
+ * writing. Objects are drawn interpolated along their motion.
+ *
+ * @see SnapshotBuffer
+ */
+public class WorldSnapshot {
+    private static final int MATRIX_SIZE = 16;
+
+    private int size;
+    private Model[] models = new Model[32];
+    private double[] radius = new double[32];
+    private double[] matrices = new double[32 * MATRIX_SIZE];
+    private double[] motions = new double[32 * 3];
+
+    // By player id
+    private int[] objectOfPlayer = new int[8]; // -1 if not drawn
+    private double[] playerPrevious = new double[8 * 3];
+    private double[] playerCurrent = new double[8 * 3];
+    private double[] playerOrientation = new double[8 * 3];
+
+    private long stepNanos; // System.nanoTime() when the step ended
+
+    // For the render thread
+    private final double[] renderMatrix = new double[MATRIX_SIZE];
+    private final PlayerView playerView = new PlayerView();
+
+    /** Number of objects to draw */
+    public int size() {
+        return size;
+    }
+
+    /** System.nanoTime() when the step of this snapshot ended */
+    public long getStepNanos() {
+        return stepNanos;
+    }
+
+    /**
+     * How far to draw the objects between their previous (0) and current (1)
+     * positions, nowNanos after the step ended
+     */
+    public double getInterpolation(long nowNanos, long stepLengthNanos) {
+        final double interpolation = (double) (nowNanos - stepNanos) / stepLengthNanos;
+        return Math.max(0, Math.min(1, interpolation));
+    }
+
+    /** Draw all objects */
+    public void render(Renderer renderer, double interpolation) {
+        final double back = 1 - interpolation;
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(matrices, i * MATRIX_SIZE, renderMatrix, 0, MATRIX_SIZE);
+            renderMatrix[12] -= motions[i * 3] * back;
+            renderMatrix[13] -= motions[i * 3 + 1] * back;
+            renderMatrix[14] -= motions[i * 3 + 2] * back;
+            renderer.renderModel(models[i], renderMatrix, 0, radius[i]);
+        }
+    }
+
+    /**
+     * The object of a player, e.g. for the camera to follow. The same object
+     * is reused by every call
+     *
+     * @return the player's object, or null if it isn't drawn
+     */
+    public GameObject getPlayer(int id, double interpolation) {
+        if (id < 0 || id >= objectOfPlayer.length || objectOfPlayer[id] < 0) {
+            return null;
+        }
+        return playerView.set(id, interpolation);
+    }
+
+    /** Start writing the snapshot of a step */
+    void clear(long stepNanos) {
+        this.stepNanos = stepNanos;
+        this.size = 0;
+        Arrays.fill(objectOfPlayer, -1);
+    }
+
+    /**
+     * Add an object to draw, with the world matrix and motion of its node
+     *
+     * @return its index
+     */
+    int add(Model model, double radius, SceneNode node) {
+        if (size == models.length) {
+            final int capacity = size * 2;
+            models = Arrays.copyOf(models, capacity);
+            this.radius = Arrays.copyOf(this.radius, capacity);
+            matrices = Arrays.copyOf(matrices, capacity * MATRIX_SIZE);
+            motions = Arrays.copyOf(motions, capacity * 3);
+        }
+
+        final int index = size++;
+        models[index] = model;
+        this.radius[index] = radius;
+        System.arraycopy(node.getWorldMatrix(), 0, matrices, index * MATRIX_SIZE, MATRIX_SIZE);
+        node.getMotion(motions, index * 3);
+        return index;
+    }
+
+    /**
+     * Mark the object at index as the object of a player, with its position
+     * before and after the step and its orientation
+     */
+    void setPlayer(int id, int index, double previousX, double previousY, double previousZ, double x, double y,
+            double z, Vector orientation) {
+        if (id >= objectOfPlayer.length) {
+            final int oldLength = objectOfPlayer.length;
+            final int length = Math.max(id + 1, oldLength * 2);
+            objectOfPlayer = Arrays.copyOf(objectOfPlayer, length);
+            Arrays.fill(objectOfPlayer, oldLength, length, -1);
+            playerPrevious = Arrays.copyOf(playerPrevious, length * 3);
+            playerCurrent = Arrays.copyOf(playerCurrent, length * 3);
+            playerOrientation = Arrays.copyOf(playerOrientation, length * 3);
+        }
+
+        objectOfPlayer[id] = index;
+        set(playerPrevious, id * 3, previousX, previousY, previousZ);
+        set(playerCurrent, id * 3, x, y, z);
+        set(playerOrientation, id * 3, orientation.x(), orientation.y(), orientation.z());
+    }
+
+    private static void set(double[] array, int offset, double x, double y, double z) {
+        array[offset] = x;
+        array[offset + 1] = y;
+        array[offset + 2] = z;
+    }
+
+    /** A player of the snapshot as a GameObject, at an interpolated position */
+    private class PlayerView implements GameObject {
+        private int index;
+        private final Vector position = new Vector();
+        private final Vector renderPosition = new Vector();
+        private final Vector orientation = new Vector();
+        private final Vector scaling = new Vector(1, 1, 1);
+
+        PlayerView set(int id, double t) {
+            this.index = objectOfPlayer[id];
+            final int offset = id * 3;
+            final double[] p = playerPrevious, c = playerCurrent, o = playerOrientation;
+            position.set(c[offset], c[offset + 1], c[offset + 2]);
+            renderPosition.set(
+                    p[offset] + (c[offset] - p[offset]) * t,
+                    p[offset + 1] + (c[offset + 1] - p[offset + 1]) * t,
+                    p[offset + 2] + (c[offset + 2] - p[offset + 2]) * t);
+            orientation.set(o[offset], o[offset + 1], o[offset + 2]);
+            return this;
+        }
+
+        public Model getModel() {
+            return models[index];
+        }
+
+        public Vector getPosition() {
+            return position;
+        }
+
+        public Vector getRenderPosition() {
+            return renderPosition;
+        }
+
+        public Vector getOrientation() {
+            return orientation;
+        }
+
+        public Vector getScaling() {
+            return scaling;
+        }
+
+        public Point2D.Double getCenter() {
+            return new Point2D.Double(position.x(), position.z());
+        }
+
+        public double getRadius() {
+            return radius[index];
+        }
+
+        /** Snapshots are only drawn, never collided */
+        public double overlappingDistance(GameObject obj) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package game;
+
+import java.util.Arrays;
+
+import core.Vector;
+
+/**
+ * The complete simulation state of a World, as flat arrays of numbers: the
+ * bodies, the surface tilt, the pillars, the players and their controllers,
+ * including the states of their random generators.
+ * <br />
+ * Written by World.save() and read back by World.restore(), in the same order.
+ * Nothing is allocated once the arrays are large enough, so a state can be
+ * saved and restored thousands of times a second, e.g. for AI rollouts.
+ *
+ * @see World#save(WorldState)
+ */
+public class WorldState {
+    private double[] doubles = new double[512];
+    private long[] longs = new long[64]; // ints, booleans and random states
+    private int numOfDoubles;
+    private int numOfLongs;
+
+    // Read cursors
+    private int doubleIndex;
+    private int longIndex;
+
+    /** Make this a copy of another state */
+    public void copyFrom(WorldState other) {
+        if (doubles.length < other.numOfDoubles) {
+            doubles = new double[other.doubles.length];
+        }
+        if (longs.length < other.numOfLongs) {
+            longs = new long[other.longs.length];
+        }
+        System.arraycopy(other.doubles, 0, doubles, 0, other.numOfDoubles);
+        System.arraycopy(other.longs, 0, longs, 0, other.numOfLongs);
+        numOfDoubles = other.numOfDoubles;
+        numOfLongs = other.numOfLongs;
+    }
+
+    /** Size of the state, in bytes */
+    public int getSizeInBytes() {
+        return (numOfDoubles + numOfLongs) * 8;
+    }
+
+    /** Start writing */
+    void clear() {
+        numOfDoubles = 0;
+        numOfLongs = 0;
+    }
+
+    /** Start reading */
+    void rewind() {
+        doubleIndex = 0;
+        longIndex = 0;
+    }
+
+    void putDouble(double value) {
+        if (numOfDoubles == doubles.length) {
+            doubles = Arrays.copyOf(doubles, numOfDoubles * 2);
+        }
+        doubles[numOfDoubles++] = value;
+    }
+
+    /** Put count values of array */
+    void putDoubles(double[] array, int count) {
+        if (numOfDoubles + count > doubles.length) {
+            doubles = Arrays.copyOf(doubles, Math.max(numOfDoubles + count, doubles.length * 2));
+        }
+        System.arraycopy(array, 0, doubles, numOfDoubles, count);
+        numOfDoubles += count;
+    }
+
+    void putVector(Vector vector) {
+        putDouble(vector.x());
+        putDouble(vector.y());
+        putDouble(vector.z());
+    }
+
+    void putLong(long value) {
+        if (numOfLongs == longs.length) {
+            longs = Arrays.copyOf(longs, numOfLongs * 2);
+        }
+        longs[numOfLongs++] = value;
+    }
+
+    void putInt(int value) {
+        putLong(value);
+    }
+
+    void putBoolean(boolean value) {
+        putLong(value ? 1 : 0);
+    }
+
+    double getDouble() {
+        return doubles[doubleIndex++];
+    }
+
+    /** Read count values into array */
+    void getDoubles(double[] array, int count) {
+        System.arraycopy(doubles, doubleIndex, array, 0, count);
+        doubleIndex += count;
+    }
+
+    /** Read a vector into dest, returns dest */
+    Vector getVector(Vector dest) {
+        return dest.set(getDouble(), getDouble(), getDouble());
+    }
+
+    long getLong() {
+        return longs[longIndex++];
+    }
+
+    int getInt() {
+        return (int) getLong();
+    }
+
+    boolean getBoolean() {
+        return getLong() != 0;
+    }
+}
@@ -0,0 +1,108 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads assets (models, textures, sounds) in parallel on worker threads, and
+ * reports how many are done. Loads that fail are reported and counted as done,
+ * so one missing file doesn't stop the game from starting.
+ * <br />
+ * Usage: add() the loads, then poll getProgress() or wait with await().
+ */
+public class AssetPipeline {
+    private final ExecutorService executor;
+    private final List<Future<?>> loads = new ArrayList<Future<?>>();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    /** Use one thread per available core */
+    public AssetPipeline() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public AssetPipeline(int numOfThreads) {
+        this.executor = Executors.newFixedThreadPool(numOfThreads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "asset-loader-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Start loading an asset
+     * 
+     * @param name shown when the load fails
+     */
+    public synchronized void add(final String name, final Load load) {
+        loads.add(executor.submit(new Runnable() {
+            public void run() {
+                try {
+                    load.load();
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    System.err.println("Cannot load " + name);
+                    e.printStackTrace();
+                } finally {
+                    completed.incrementAndGet();
+                }
+            }
+        }));
+    }
+
+    public synchronized int getTotal() {
+        return loads.size();
+    }
+
+    public int getCompleted() {
+        return completed.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    /** @return the done fraction of the loads, between 0 and 1 */
+    public double getProgress() {
+        final int total = getTotal();
+        return total == 0 ? 1 : (double) getCompleted() / total;
+    }
+
+    public boolean isDone() {
+        return getCompleted() == getTotal();
+    }
+
+    /**
+     * Wait for all loads added so far, then stop the worker threads
+     */
+    public void await() throws InterruptedException {
+        final List<Future<?>> pending;
+        synchronized (this) {
+            pending = new ArrayList<Future<?>>(loads);
+        }
+
+        for (Future<?> load : pending) {
+            try {
+                load.get();
+            } catch (ExecutionException e) {
+                // reported by the load itself
+            }
+        }
+        executor.shutdown();
+    }
+
+    /** Loads one asset */
+    public interface Load {
+        void load() throws Exception;
+    }
+}
@@ -0,0 +1,17 @@
+package util;
+
+/**
+ * A source of time, so that what is timed can run on simulated time instead
+ * of the wall clock, e.g. to replay a simulation exactly.
+ */
+public interface Clock {
+    /** The wall clock, System.nanoTime() */
+    Clock SYSTEM = new Clock() {
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    /** Current time in nanoseconds, from an arbitrary origin */
+    long nanoTime();
+}
@@ -0,0 +1,55 @@
+package util;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Random whose whole state is one long that can be read and set, so that a
+ * simulation can be saved and restored with its random numbers (SplitMix64).
+ * <br />
+ * Faster than Random, as it is not thread-safe: like the rest of a world, an
+ * instance belongs to one thread at a time.
+ */
+public class FastRandom extends Random {
+    private static final long serialVersionUID = 1L;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final AtomicLong seedUniquifier = new AtomicLong(System.nanoTime());
+
+    private long state; // no initializer, it is set by Random() through setSeed()
+
+    /** Seeded differently from any other instance */
+    public FastRandom() {
+        this(seedUniquifier.addAndGet(GOLDEN_GAMMA) ^ System.nanoTime());
+    }
+
+    public FastRandom(long seed) {
+        super(seed);
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        this.state = seed;
+    }
+
+    /** The state, to continue the same numbers later with setState() */
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    @Override
+    public long nextLong() {
+        long z = (state += GOLDEN_GAMMA);
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+}
@@ -0,0 +1,103 @@
+package util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a step at a fixed rate on its own thread, e.g. the game simulation.
+ * <br />
+ * Steps are scheduled on a fixed timeline: a late step is followed by the
+ * next ones without waiting, until the thread catches up. If it falls more
+ * than MAX_STEPS_BEHIND steps behind, the missed time is dropped instead.
+ * <br />
+ * State owned by the thread is changed from other threads by post()ing a
+ * command, which runs on the thread before the next step.
+ */
+public class FixedStepThread {
+    private static final int MAX_STEPS_BEHIND = 8;
+
+    /** The work of one step */
+    public interface Step {
+        void step();
+    }
+
+    private final String name;
+    private final long stepNanos;
+    private final Step step;
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<Runnable>();
+    private volatile boolean isRunning;
+    private Thread thread;
+
+    /**
+     * @param name      name of the thread
+     * @param stepSecs  time between the starts of two steps
+     * @param step      run every step
+     */
+    public FixedStepThread(String name, double stepSecs, Step step) {
+        this.name = name;
+        this.stepNanos = (long) (stepSecs * 1e9);
+        this.step = step;
+    }
+
+    /** Start stepping, if not started */
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+
+        isRunning = true;
+        thread = new Thread(new Runnable() {
+            public void run() {
+                loop();
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Stop stepping and wait for the current step to finish */
+    public void stop() throws InterruptedException {
+        final Thread stopped;
+        synchronized (this) {
+            stopped = thread;
+            thread = null;
+            isRunning = false;
+        }
+
+        if (stopped != null) {
+            LockSupport.unpark(stopped);
+            stopped.join();
+        }
+    }
+
+    /** Run a command on the thread, before the next step */
+    public void post(Runnable command) {
+        commands.add(command);
+    }
+
+    private void loop() {
+        long nextStep = System.nanoTime();
+        while (isRunning) {
+            try {
+                Runnable command;
+                while ((command = commands.poll()) != null) {
+                    command.run();
+                }
+                step.step();
+            } catch (RuntimeException e) {
+                e.printStackTrace(); // keep stepping
+            }
+
+            nextStep += stepNanos;
+            long now = System.nanoTime();
+            if (now - nextStep > MAX_STEPS_BEHIND * stepNanos) {
+                nextStep = now; // too far behind to catch up
+            }
+            while (isRunning && nextStep - now > 0) {
+                LockSupport.parkNanos(nextStep - now);
+                now = System.nanoTime();
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds, for percentiles like p50,
+ * p99 and p999. Any number of threads may record at the same time.
+ * <br />
+ * Buckets are log-linear: exact below 2^SUB_BITS nanoseconds, and above that
+ * every power of two is split into equal sub-buckets. A recorded value is
+ * reported with a relative error of at most 1/2^(SUB_BITS-1).
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 6;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int HALF_COUNT = SUB_COUNT / 2;
+    private static final int NUM_OF_BUCKETS = SUB_COUNT + (63 - SUB_BITS) * HALF_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_OF_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record one latency
+     * 
+     * @param nanos latency in nanoseconds, negative values count as 0
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+
+        counts.incrementAndGet(bucketOf(nanos));
+        count.incrementAndGet();
+
+        long current = max.get();
+        while (nanos > current && !max.compareAndSet(current, nanos)) {
+            current = max.get();
+        }
+    }
+
+    /** Number of recorded latencies */
+    public long getCount() {
+        return count.get();
+    }
+
+    /** Largest recorded latency in nanoseconds, exact */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile between 0 and 100, e.g. 99.9
+     * @return the latency in nanoseconds that this percentage of the recorded
+     *         latencies is at or below, or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        final long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < NUM_OF_BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), getMax());
+            }
+        }
+        return getMax(); // a record in progress was counted but not bucketed yet
+    }
+
+    /**
+     * Forget all recorded latencies. Latencies recorded during the reset may be
+     * partly kept
+     */
+    public void reset() {
+        for (int i = 0; i < NUM_OF_BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        max.set(0);
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+
+        // Keep the top SUB_BITS bits of the value
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS + 1;
+        final int mantissa = (int) (value >>> shift);
+        return SUB_COUNT + (shift - 1) * HALF_COUNT + (mantissa - HALF_COUNT);
+    }
+
+    /** The largest value that falls into a bucket */
+    private static long highestValueOf(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+
+        final int shift = (bucket - SUB_COUNT) / HALF_COUNT + 1;
+        final long mantissa = (bucket - SUB_COUNT) % HALF_COUNT + HALF_COUNT;
+        return (mantissa << shift) + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,125 @@
+package util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs a loop over [0, count) split into contiguous chunks on the common
+ * ForkJoin pool. Chunk boundaries depend only on count and the number of
+ * chunks, so callers can keep per-chunk buffers and merge them in order.
+ * <br />
+ * The tasks splitting a loop are kept by its Body, one tree per number of
+ * chunks, and reused by the next run, so a loop run every step does not
+ * allocate.
+ */
+public final class ParallelFor {
+    /** Upper bound on the number of chunks, for sizing per-chunk buffers */
+    public static final int MAX_CHUNKS = 64;
+
+    /**
+     * Loop body for the items [from, to) of one chunk. Keep it for the loops
+     * run more than once, so that its tasks are reused
+     */
+    public static abstract class Body {
+        // By number of chunks, built on first use
+        private final ChunkTask[] trees = new ChunkTask[MAX_CHUNKS + 1];
+        private final AtomicBoolean isRunning = new AtomicBoolean();
+
+        public abstract void run(int chunk, int from, int to);
+    }
+
+    private ParallelFor() {
+    }
+
+    /**
+     * Number of chunks to split count items into, at least minChunkSize each.
+     * Returns 1 (run inline) if not parallel.
+     */
+    public static int chunks(int count, int minChunkSize, boolean parallel) {
+        if (!parallel) {
+            return 1;
+        }
+        final int wanted = ForkJoinPool.getCommonPoolParallelism() * 4;
+        return Math.max(1, Math.min(Math.min(wanted, MAX_CHUNKS), count / minChunkSize));
+    }
+
+    /**
+     * Run body over [0, count) in the given number of chunks, and wait for all of
+     * them
+     */
+    public static void run(int count, int chunks, Body body) {
+        if (chunks <= 1) {
+            body.run(0, 0, count);
+            return;
+        }
+
+        // The body's tasks, unless it is already running on another thread or
+        // split more finely than is cached
+        if (chunks > MAX_CHUNKS || !body.isRunning.compareAndSet(false, true)) {
+            ForkJoinPool.commonPool().invoke(new ChunkTask(body, chunks, 0, chunks).prepare(count));
+            return;
+        }
+        try {
+            ChunkTask tree = body.trees[chunks];
+            if (tree == null) {
+                tree = body.trees[chunks] = new ChunkTask(body, chunks, 0, chunks);
+            }
+            ForkJoinPool.commonPool().invoke(tree.prepare(count));
+        } finally {
+            body.isRunning.set(false);
+        }
+    }
+
+    /** Start of chunk i of count items split into chunks */
+    private static int chunkStart(int count, int chunks, int i) {
+        return (int) ((long) count * i / chunks);
+    }
+
+    /** Runs the chunks [firstChunk, endChunk), splitting them in two halves */
+    private static class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Body body;
+        private final int chunks;
+        private final int firstChunk;
+        private final int endChunk;
+        private final ChunkTask left; // null for one chunk
+        private final ChunkTask right;
+        private int count;
+
+        ChunkTask(Body body, int chunks, int firstChunk, int endChunk) {
+            this.body = body;
+            this.chunks = chunks;
+            this.firstChunk = firstChunk;
+            this.endChunk = endChunk;
+            if (endChunk - firstChunk == 1) {
+                left = right = null;
+            } else {
+                final int middle = (firstChunk + endChunk) >>> 1;
+                left = new ChunkTask(body, chunks, firstChunk, middle);
+                right = new ChunkTask(body, chunks, middle, endChunk);
+            }
+        }
+
+        /** Make this tree ready to run (again) over count items */
+        ChunkTask prepare(int count) {
+            this.count = count;
+            reinitialize();
+            if (left != null) {
+                left.prepare(count);
+                right.prepare(count);
+            }
+            return this;
+        }
+
+        @Override
+        protected void compute() {
+            if (left == null) {
+                body.run(firstChunk, chunkStart(count, chunks, firstChunk), chunkStart(count, chunks, endChunk));
+                return;
+            }
+            invokeAll(left, right);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Times named phases of the game (a physics step, collisions, rendering...)
+ * into LatencyHistograms. Timing a phase costs two System.nanoTime() calls and
+ * a few atomic increments, so it is always on in the game.
+ * <br />
+ * Usage:
+ * 
+ * <pre>
+ * final long start = phase.start();
+ * ...
+ * phase.stop(start);
+ * </pre>
+ * 
+ * @see LatencyHistogram
+ */
+public class Profiler {
+    /** The profiler of the game */
+    public static final Profiler DEFAULT = new Profiler(true);
+    /** Records nothing, for worlds that aren't watched, e.g. batch simulations */
+    public static final Profiler DISABLED = new Profiler(false);
+
+    private static final double NANOSECS_IN_MSEC = 1e6;
+
+    private final boolean isEnabled;
+    private final List<Phase> phases = new CopyOnWriteArrayList<Phase>();
+
+    private Profiler(boolean isEnabled) {
+        this.isEnabled = isEnabled;
+    }
+
+    /**
+     * Get the phase with this name, creating it if needed. Phases are listed in
+     * the order they were first requested
+     */
+    public synchronized Phase phase(String name) {
+        for (Phase phase : phases) {
+            if (phase.getName().equals(name)) {
+                return phase;
+            }
+        }
+
+        final Phase phase = new Phase(name, isEnabled);
+        phases.add(phase);
+        return phase;
+    }
+
+    public List<Phase> getPhases() {
+        return phases;
+    }
+
+    /** Forget the latencies of all phases */
+    public void reset() {
+        for (Phase phase : phases) {
+            phase.getHistogram().reset();
+        }
+    }
+
+    /**
+     * One line per phase: p50/p99/p999/max in milliseconds. Short enough for
+     * the screen
+     */
+    public List<String> getSummary() {
+        final List<String> lines = new ArrayList<String>();
+        final StringBuilder line = new StringBuilder();
+        for (int i = 0; i < getSummaryLineCount(); i++) {
+            line.setLength(0);
+            lines.add(appendSummaryLine(i, line).toString());
+        }
+        return lines;
+    }
+
+    /** Number of lines in the summary: a header, then one per phase */
+    public int getSummaryLineCount() {
+        return phases.size() + 1;
+    }
+
+    /**
+     * Append a line of getSummary() without allocating, for drawing it every
+     * frame
+     */
+    public StringBuilder appendSummaryLine(int index, StringBuilder dest) {
+        if (index == 0) {
+            return dest.append("ms: p50/p99/p999/max");
+        }
+
+        final Phase phase = phases.get(index - 1);
+        final LatencyHistogram histogram = phase.getHistogram();
+        dest.append(phase.getName()).append(' ');
+        TextFormat.appendFixed(dest, toMilliseconds(histogram.getPercentile(50)), 2).append('/');
+        TextFormat.appendFixed(dest, toMilliseconds(histogram.getPercentile(99)), 2).append('/');
+        TextFormat.appendFixed(dest, toMilliseconds(histogram.getPercentile(99.9)), 2).append('/');
+        return TextFormat.appendFixed(dest, toMilliseconds(histogram.getMax()), 2);
+    }
+
+    /**
+     * Write the count and percentiles of every phase to a text file
+     * 
+     * @throws IOException when the file cannot be written
+     */
+    public void writeReport(File file) throws IOException {
+        final PrintWriter writer = new PrintWriter(file, "UTF-8");
+        try {
+            writer.printf("%-20s %10s %10s %10s %10s %10s %10s%n", "phase (ms)", "count", "p50", "p90", "p99",
+                    "p999", "max");
+            for (Phase phase : phases) {
+                final LatencyHistogram histogram = phase.getHistogram();
+                writer.printf("%-20s %10d %10.3f %10.3f %10.3f %10.3f %10.3f%n", phase.getName(),
+                        histogram.getCount(),
+                        toMilliseconds(histogram.getPercentile(50)),
+                        toMilliseconds(histogram.getPercentile(90)),
+                        toMilliseconds(histogram.getPercentile(99)),
+                        toMilliseconds(histogram.getPercentile(99.9)),
+                        toMilliseconds(histogram.getMax()));
+            }
+        } finally {
+            writer.close();
+        }
+
+        if (writer.checkError()) {
+            throw new IOException("Cannot write profile to " + file);
+        }
+    }
+
+    private static double toMilliseconds(long nanos) {
+        return nanos / NANOSECS_IN_MSEC;
+    }
+
+    /** A timed phase. Can be timed from several threads at once */
+    public static class Phase {
+        private final String name;
+        private final boolean isEnabled;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        private Phase(String name, boolean isEnabled) {
+            this.name = name;
+            this.isEnabled = isEnabled;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+
+        /** @return the start time, to be passed to stop() */
+        public long start() {
+            return isEnabled ? System.nanoTime() : 0;
+        }
+
+        /** Record the time since start */
+        public void stop(long start) {
+            if (isEnabled) {
+                histogram.record(System.nanoTime() - start);
+            }
+        }
+    }
+}
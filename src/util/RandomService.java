@@ -0,0 +1,41 @@
+package util;
+
+/**
+ * The one source of the random generators of a simulation. Every generator is
+ * seeded from a single seed, in the order they are asked for, so the same seed
+ * gives the same numbers everywhere.
+ */
+public class RandomService {
+    private long seed;
+    private final FastRandom seeds = new FastRandom();
+
+    /** Seeded differently from any other service */
+    public RandomService() {
+        this(new FastRandom().nextLong());
+    }
+
+    public RandomService(long seed) {
+        setSeed(seed);
+    }
+
+    /** Start over from another seed */
+    public void setSeed(long seed) {
+        this.seed = seed;
+        seeds.setSeed(seed);
+    }
+
+    /** The seed everything is derived from, to run the same again */
+    public long getSeed() {
+        return seed;
+    }
+
+    /** The seed of the next generator */
+    public long nextSeed() {
+        return seeds.nextLong();
+    }
+
+    /** A new generator, seeded with nextSeed() */
+    public FastRandom create() {
+        return new FastRandom(nextSeed());
+    }
+}
@@ -0,0 +1,41 @@
+package util;
+
+/**
+ * Formats numbers into a StringBuilder without allocating, for text that is
+ * drawn every frame
+ */
+public class TextFormat {
+    private static final long[] POWERS_OF_TEN = { 1, 10, 100, 1000, 10000, 100000, 1000000 };
+
+    private TextFormat() {
+    }
+
+    /**
+     * Append a number with a fixed number of decimals, rounded half up, e.g.
+     * 1.5 with 2 decimals is "1.50"
+     * 
+     * @param decimals between 0 and 6
+     */
+    public static StringBuilder appendFixed(StringBuilder dest, double value, int decimals) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return dest.append(value);
+        }
+
+        final long scale = POWERS_OF_TEN[decimals];
+        final long scaled = Math.round(Math.abs(value) * scale);
+        if (value < 0 && scaled != 0) {
+            dest.append('-');
+        }
+        dest.append(scaled / scale);
+
+        if (decimals > 0) {
+            dest.append('.');
+            final long fraction = scaled % scale;
+            for (long digit = scale / 10; digit > fraction && digit > 1; digit /= 10) {
+                dest.append('0');
+            }
+            dest.append(fraction);
+        }
+        return dest;
+    }
+}
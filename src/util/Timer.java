@@ -2,20 +2,27 @@
 package util;
 
 /**
- * Provides a simple mechanism to track elapsed clock time
+ * Provides a simple mechanism to track elapsed clock time, of the wall clock
+ * or of another Clock
  */
 public class Timer {
     private final static double NANOSECS_IN_SEC = 1e9;
     private final static double NANOSECS_IN_MSEC = 1e6;
 
+    private final Clock clock;
     private long timestamp;
 
     public Timer() {
+        this(Clock.SYSTEM);
+    }
+
+    public Timer(Clock clock) {
+        this.clock = clock;
         restart();
     }
 
     public void restart() {
-        this.timestamp = System.nanoTime();
+        this.timestamp = clock.nanoTime();
     }
 
     /**
@@ -36,6 +43,6 @@ public class Timer {
      * @return the elapsed time in nanoseconds
      */
     public long elapsedNanoseconds() {
-        return System.nanoTime() - this.timestamp;
+        return clock.nanoTime() - this.timestamp;
     }
 }